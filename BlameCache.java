@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Finished blames, so that blaming a file again, even after a few more
+ *  commits, only follows the history back as far as a commit whose blame
+ *  of the file is known.  An entry gives, for one file in one commit,
+ *  the commit that last changed each of its lines.  Commits never
+ *  change, so neither do entries.  Each entry is a file in a directory,
+ *  named by the hash of the commit's id and the file's path, holding the
+ *  blob id of the file, a table of the distinct commits and, for each
+ *  line, the position of its commit in the table.
+ *  @author Jianing Yu
+ */
+class BlameCache {
+
+    /** The magic number of an entry. */
+    static final int MAGIC = 0x474c424c;
+    /** The format version of an entry. */
+    static final int VERSION = 1;
+
+    /** The entries in directory DIR, which is created when needed. */
+    BlameCache(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the commit that last changed each line of the file at
+     *  PATH, with '/' between names, in commit COMMIT, where it is blob
+     *  BLOB, or null if that is not known. */
+    ObjectId[] get(ObjectId commit, String path, ObjectId blob) {
+        File file = entry(commit, path);
+        if (!file.isFile()) {
+            return null;
+        }
+        Codec.Decoder in = new Codec.Decoder(Utils.readContents(file),
+                                             MAGIC, VERSION);
+        if (!in.id().equals(blob)) {
+            return null;
+        }
+        ObjectId[] commits = new ObjectId[(int) in.varint()];
+        for (int i = 0; i < commits.length; i += 1) {
+            commits[i] = in.id();
+        }
+        ObjectId[] result = new ObjectId[(int) in.varint()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = commits[(int) in.varint()];
+        }
+        return result;
+    }
+
+    /** Records that LINES give the commit that last changed each line of
+     *  the file at PATH, with '/' between names, in commit COMMIT, where
+     *  it is blob BLOB. */
+    void put(ObjectId commit, String path, ObjectId blob, ObjectId[] lines) {
+        Map<ObjectId, Integer> commits = new LinkedHashMap<>();
+        for (ObjectId line : lines) {
+            commits.putIfAbsent(line, commits.size());
+        }
+        Codec.Encoder out = new Codec.Encoder(MAGIC, VERSION)
+            .id(blob).varint(commits.size());
+        for (ObjectId id : commits.keySet()) {
+            out.id(id);
+        }
+        out.varint(lines.length);
+        for (ObjectId line : lines) {
+            out.varint(commits.get(line));
+        }
+        _dir.mkdirs();
+        Utils.writeAtomically(entry(commit, path), out.toByteArray());
+    }
+
+    /** Removes all entries. */
+    void clear() {
+        File[] entries = _dir.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                entry.delete();
+            }
+        }
+    }
+
+    /** Returns the file of the entry for PATH in COMMIT. */
+    private File entry(ObjectId commit, String path) {
+        return new File(_dir, ObjectId.hash(
+            commit.toBytes(), path.getBytes(StandardCharsets.UTF_8))
+                        .toString());
+    }
+
+    /** The directory of the entries. */
+    private final File _dir;
+}
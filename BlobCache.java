@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least-recently-used cache of blob contents in front of an
+ *  ObjectStore.  A blob is read from the store only when first asked
+ *  for, and the cache evicts the least recently used blobs whenever the
+ *  total size of its contents exceeds its capacity in bytes.  The lock
+ *  is only held to look up or add entries, never while reading the
+ *  store, so threads missing the cache read in parallel; two of them
+ *  may then both read the same blob.
+ *  @author Jianing Yu
+ */
+class BlobCache {
+
+    /** Name of the system property giving the capacity in bytes. */
+    static final String CAPACITY_PROPERTY = "gitlet.blobCacheBytes";
+    /** Capacity used when CAPACITY_PROPERTY is not set. */
+    static final long DEFAULT_CAPACITY = 64L << 20;
+
+    /** A cache of the blobs in STORE holding at most CAPACITY bytes. */
+    BlobCache(ObjectStore store, long capacity) {
+        _store = store;
+        _capacity = capacity;
+    }
+
+    /** A cache of the blobs in STORE whose capacity is taken from the
+     *  CAPACITY_PROPERTY system property. */
+    BlobCache(ObjectStore store) {
+        this(store, Long.getLong(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /** Returns the contents of blob ID, or null if there is none.  The
+     *  result is shared and must not be modified. */
+    byte[] get(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        byte[] contents;
+        synchronized (this) {
+            contents = _blobs.get(id);
+        }
+        if (contents == null) {
+            contents = _store.get(id);
+            if (contents != null) {
+                put(id, contents);
+            }
+        }
+        return contents;
+    }
+
+    /** Records that blob ID has CONTENTS, which must not be modified
+     *  afterwards.  Blobs larger than the whole cache are not kept. */
+    synchronized void put(ObjectId id, byte[] contents) {
+        if (contents.length > _capacity || _blobs.containsKey(id)) {
+            return;
+        }
+        _blobs.put(id, contents);
+        _size += contents.length;
+        Iterator<byte[]> eldest = _blobs.values().iterator();
+        while (_size > _capacity) {
+            _size -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /** Returns the total size in bytes of the cached blobs. */
+    synchronized long size() {
+        return _size;
+    }
+
+    /** The store blobs are read from. */
+    private final ObjectStore _store;
+    /** The maximum total size of cached blobs, in bytes. */
+    private final long _capacity;
+    /** Cached blobs by id, least recently used first. */
+    private final Map<ObjectId, byte[]> _blobs =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** The total size of the values of _blobs, in bytes. */
+    private long _size;
+}
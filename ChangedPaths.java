@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** Bloom filters of the paths each commit changed relative to its first
+ *  parent, so that a log limited to one path can pass over most commits
+ *  without reading their trees.  The file holds one fixed-size record
+ *  per commit, at the commit's position in the commit graph: the
+ *  commit's 20-byte id and a filter of FILTER_BITS bits, into which each
+ *  changed file and each directory above one is hashed HASHES times.  A
+ *  commit changing more than MAX_PATHS paths gets a filter with every
+ *  bit set, which matches any path.  A filter answers "maybe" or "no":
+ *  only a "no" is certain.  A record holding some other id, such as
+ *  the zeros of a gap never written or anything past the end of the
+ *  file, says nothing about the commit at its position.
+ *  @author Jianing Yu
+ */
+class ChangedPaths {
+
+    /** The size of a filter in bytes. */
+    static final int FILTER_BYTES = 128;
+    /** The size of a filter in bits, a power of two. */
+    static final int FILTER_BITS = FILTER_BYTES * Byte.SIZE;
+    /** The number of bits set for each path. */
+    static final int HASHES = 7;
+    /** The largest number of paths hashed into a filter. */
+    static final int MAX_PATHS = 100;
+    /** The size of one record in bytes. */
+    static final int RECORD_SIZE = ObjectId.SIZE + FILTER_BYTES;
+
+    /** Returns the paths of the files in CHANGES and of the directories
+     *  above them, with '/' between names. */
+    static Set<String> paths(List<Tree.Change> changes) {
+        Set<String> result = new TreeSet<>();
+        for (Tree.Change change : changes) {
+            File file = change._file;
+            while (file != null && result.add(path(file))) {
+                file = file.getParentFile();
+            }
+        }
+        return result;
+    }
+
+    /** Returns FILE, a relative path of the working directory, with '/'
+     *  between names. */
+    static String path(File file) {
+        return file.getPath().replace(File.separatorChar, '/');
+    }
+
+    /** Writes to FILE, as record POS, the filter of commit ID, which
+     *  changed PATHS, and forces it to disk.  Records between the end of
+     *  FILE and POS are left as zeros. */
+    static void write(File file, int pos, ObjectId id,
+                      Collection<String> paths) {
+        byte[] filter = new byte[FILTER_BYTES];
+        if (paths.size() > MAX_PATHS) {
+            Arrays.fill(filter, (byte) -1);
+        } else {
+            for (String path : paths) {
+                for (int bit : bits(path)) {
+                    filter[bit >>> 3] |= 1 << (bit & 7);
+                }
+            }
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        id.write(record);
+        record.put(filter);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek((long) pos * RECORD_SIZE);
+            out.write(record.array());
+            out.getChannel().force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The filters stored in FILE, which are none if there is no such
+     *  file. */
+    ChangedPaths(File file) {
+        if (!file.isFile()) {
+            _map = ByteBuffer.allocate(0);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if commit ID, at position POS of the commit graph,
+     *  certainly did not change PATH, a relative path with '/' between
+     *  names, and false if it may have or if it has no filter. */
+    boolean excludes(int pos, ObjectId id, String path) {
+        if (pos < 0 || (long) (pos + 1) * RECORD_SIZE > _map.limit()) {
+            return false;
+        }
+        int base = pos * RECORD_SIZE;
+        for (int k = 0; k < ObjectId.WORDS; k += 1) {
+            if (_map.getInt(base + k * Integer.BYTES) != id.word(k)) {
+                return false;
+            }
+        }
+        base += ObjectId.SIZE;
+        for (int bit : bits(path)) {
+            if ((_map.get(base + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the HASHES bits of a filter set for PATH.  They come from
+     *  the two halves of a 64-bit FNV-1a hash of its UTF-8 bytes by
+     *  double hashing. */
+    private static int[] bits(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        int h1 = (int) hash, h2 = (int) (hash >>> 32) | 1;
+        int[] result = new int[HASHES];
+        for (int i = 0; i < HASHES; i += 1) {
+            result[i] = (h1 + i * h2) & (FILTER_BITS - 1);
+        }
+        return result;
+    }
+
+    /** The records. */
+    private final ByteBuffer _map;
+}
@@ -0,0 +1,22 @@
+package gitlet;
+
+/** A thin entry point for scripts that run many commands while a
+ *  daemon serves the repository.  It forwards its arguments to the
+ *  daemon without loading the rest of Gitlet, which saves the time of
+ *  loading it and the repository, and falls back to Main when no daemon
+ *  is running.  It still starts a JVM per command; scripts that need
+ *  less can speak the daemon's protocol, described in Daemon, over its
+ *  socket directly.
+ *  @author Jianing Yu
+ */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS, where ARGS are the arguments of
+     *  Main. */
+    public static void main(String... args) {
+        if (args.length == 1 && args[0].equals("daemon")
+            || !Daemon.forward(args)) {
+            Main.run(args);
+        }
+    }
+}
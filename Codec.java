@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The compact binary encoding of Gitlet's metadata and commits.  An
+ *  encoding starts with a 4-byte magic number naming what it holds and
+ *  a varint format version, so that readers can recognize older formats.
+ *  After that come
+ *  <ul>
+ *  <li> varints: seven bits per byte, low bits first, the top bit set
+ *       on all bytes but the last; signed values are zigzag-encoded
+ *       first, so small negative values stay short;
+ *  <li> strings: the varint length of the UTF-8 bytes plus one (zero for
+ *       null), then the bytes;
+ *  <li> ids: the 20 raw bytes of an ObjectId;
+ *  <li> path lists: a table of the distinct parent directories, then for
+ *       each path the varint position of its directory in the table
+ *       plus one (zero for none) and its file name as a string.
+ *  </ul>
+ *  Java serialization, which Gitlet used before, is recognized by its
+ *  own magic number (see isSerialized).
+ *  @author Jianing Yu
+ */
+class Codec {
+
+    /** Returns true iff BYTES start with the magic number of Java
+     *  serialization, that is, were written by Utils.serialize. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == 0xac
+            && (bytes[1] & 0xff) == 0xed;
+    }
+
+    /** Returns true iff BYTES start with magic number MAGIC. */
+    static boolean hasMagic(byte[] bytes, int magic) {
+        return bytes.length >= Integer.BYTES
+            && ByteBuffer.wrap(bytes).getInt() == magic;
+    }
+
+    /** Builds an encoding. */
+    static class Encoder {
+        /** An encoding with magic number MAGIC and format version
+         *  VERSION. */
+        Encoder(int magic, int version) {
+            _out.write(magic >>> 24);
+            _out.write(magic >>> 16);
+            _out.write(magic >>> 8);
+            _out.write(magic);
+            varint(version);
+        }
+
+        /** Appends VALUE, which must not be negative, as a varint and
+         *  returns this encoder. */
+        Encoder varint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                _out.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            _out.write((int) value);
+            return this;
+        }
+
+        /** Appends VALUE as a zigzag-encoded varint and returns this
+         *  encoder. */
+        Encoder signed(long value) {
+            return varint((value << 1) ^ (value >> 63));
+        }
+
+        /** Appends the string S, which may be null, and returns this
+         *  encoder. */
+        Encoder string(String s) {
+            if (s == null) {
+                return varint(0);
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            _out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Appends the raw bytes of ID and returns this encoder. */
+        Encoder id(ObjectId id) {
+            byte[] bytes = id.toBytes();
+            _out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Appends the list of PATHS, each a relative path of the working
+         *  directory, and returns this encoder. */
+        Encoder paths(Collection<File> paths) {
+            Map<String, Integer> dirs = new LinkedHashMap<>();
+            for (File path : paths) {
+                String dir = path.getParent();
+                if (dir != null) {
+                    dirs.putIfAbsent(dir, dirs.size());
+                }
+            }
+            varint(dirs.size());
+            for (String dir : dirs.keySet()) {
+                string(dir.replace(File.separatorChar, '/'));
+            }
+            varint(paths.size());
+            for (File path : paths) {
+                String dir = path.getParent();
+                varint(dir == null ? 0 : dirs.get(dir) + 1);
+                string(path.getName());
+            }
+            return this;
+        }
+
+        /** Returns the encoding so far. */
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+
+        /** The encoding so far. */
+        private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    }
+
+    /** Reads an encoding. */
+    static class Decoder {
+        /** A decoder of BYTES, which must start with magic number MAGIC
+         *  and a version no greater than MAXVERSION. */
+        Decoder(byte[] bytes, int magic, int maxVersion) {
+            _in = ByteBuffer.wrap(bytes);
+            if (!hasMagic(bytes, magic)) {
+                throw Utils.error("Unrecognized file format.");
+            }
+            _in.getInt();
+            _version = (int) varint();
+            if (_version > maxVersion) {
+                throw Utils.error("Unsupported format version %d.", _version);
+            }
+        }
+
+        /** Returns the format version. */
+        int version() {
+            return _version;
+        }
+
+        /** Returns the next varint. */
+        long varint() {
+            long result = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = _in.get();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** Returns the next zigzag-encoded varint. */
+        long signed() {
+            long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /** Returns the next string, which may be null. */
+        String string() {
+            int length = (int) varint();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            _in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Returns the next id. */
+        ObjectId id() {
+            return ObjectId.read(_in);
+        }
+
+        /** Returns the next list of paths. */
+        List<File> paths() {
+            int dirCount = (int) varint();
+            List<String> dirs = new ArrayList<>(dirCount);
+            for (int i = 0; i < dirCount; i += 1) {
+                dirs.add(string().replace('/', File.separatorChar));
+            }
+            int count = (int) varint();
+            List<File> result = new ArrayList<>(count);
+            Map<Integer, File> parents = new HashMap<>();
+            for (int i = 0; i < count; i += 1) {
+                int dir = (int) varint();
+                String name = string();
+                result.add(dir == 0 ? new File(name)
+                           : new File(parents.computeIfAbsent(
+                                 dir, d -> new File(dirs.get(d - 1))), name));
+            }
+            return result;
+        }
+
+        /** The bytes being read. */
+        private final ByteBuffer _in;
+        /** The format version. */
+        private final int _version;
+    }
+}
@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** The shape of the commit history, kept apart from the commits
+ *  themselves so that ancestry questions can be answered without
+ *  reading any commit objects.  On disk it is an append-only file with
+ *  one fixed-size record per commit: its 20-byte id, its generation
+ *  number, a parent count and room for the 20-byte ids of up to
+ *  MAX_PARENTS parents.  Because records have a fixed size, a record
+ *  torn by an interrupted append is easily recognized: it is ignored
+ *  when reading and cut off by the next append.  In memory, commits
+ *  are numbered by position, their ids are packed five ints apiece into
+ *  one array, positions are found through an open-addressing table of
+ *  ints, and parents are stored as arrays of positions.  The generation
+ *  number of a commit with no parents is 1, and that of any other commit
+ *  is one more than the largest generation number of its parents, so an
+ *  ancestor always has a smaller generation number than its
+ *  descendants.
+ *  @author Jianing Yu
+ */
+class CommitGraph {
+
+    /** The largest number of parents of a commit. */
+    static final int MAX_PARENTS = 2;
+    /** The size of one record in bytes. */
+    static final int RECORD_SIZE = ObjectId.SIZE + Integer.BYTES + 1
+        + MAX_PARENTS * ObjectId.SIZE;
+
+    /** Returns the graph stored in FILE, which is empty if there is no
+     *  such file. */
+    static CommitGraph read(File file) {
+        CommitGraph graph = new CommitGraph();
+        if (!file.isFile()) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] bytes = new byte[RECORD_SIZE];
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            for (long n = file.length() / RECORD_SIZE; n > 0; n -= 1) {
+                in.readFully(bytes);
+                record.clear();
+                ObjectId commit = ObjectId.read(record);
+                int generation = record.getInt();
+                ObjectId[] parents = new ObjectId[record.get() & 0xff];
+                for (int i = 0; i < parents.length; i += 1) {
+                    parents[i] = ObjectId.read(record);
+                }
+                graph.add(commit, generation, parents);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return graph;
+    }
+
+    /** Appends to FILE the record of commit ID with generation number
+     *  GENERATION and parents PARENTS, which must already be recorded,
+     *  and forces it to disk.  Returns the position of the record. */
+    static int append(File file, ObjectId id, int generation,
+                       List<ObjectId> parents) {
+        if (parents.size() > MAX_PARENTS) {
+            throw Utils.error("Too many parents.");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        id.write(record);
+        record.putInt(generation).put((byte) parents.size());
+        for (ObjectId parent : parents) {
+            parent.write(record);
+        }
+        Utils.appendRecords(file, RECORD_SIZE, record.array(), true);
+        return (int) (file.length() / RECORD_SIZE) - 1;
+    }
+
+    /** Returns the number of commits in this graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the position of commit ID, or -1 if it is not in this
+     *  graph. */
+    int position(ObjectId id) {
+        if (_slots.length == 0) {
+            return -1;
+        }
+        int mask = _slots.length - 1;
+        for (int slot = id.hashCode() & mask;; slot = (slot + 1) & mask) {
+            int pos = _slots[slot] - 1;
+            if (pos < 0 || hasId(pos, id)) {
+                return pos;
+            }
+        }
+    }
+
+    /** Returns the id of the commit at position POS. */
+    ObjectId id(int pos) {
+        int w = pos * ObjectId.WORDS;
+        return new ObjectId(_words[w], _words[w + 1], _words[w + 2],
+                            _words[w + 3], _words[w + 4]);
+    }
+
+    /** Returns the generation number of the commit at position POS. */
+    int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /** Returns the positions of the parents of the commit at POS. */
+    int[] parents(int pos) {
+        return _parents[pos];
+    }
+
+    /** Returns the ids of all commits in this graph whose ids, written in
+     *  hexadecimal, start with PREFIX, in order.  The first lookup sorts
+     *  the ids; each lookup after that is a binary search. */
+    List<ObjectId> withPrefix(String prefix) {
+        if (_sorted == null) {
+            _sorted = new ObjectId[_size];
+            for (int pos = 0; pos < _size; pos += 1) {
+                _sorted[pos] = id(pos);
+            }
+            Arrays.sort(_sorted);
+        }
+        List<ObjectId> result = new ArrayList<>();
+        StringBuilder lowest = new StringBuilder(prefix);
+        while (lowest.length() < Utils.UID_LENGTH) {
+            lowest.append('0');
+        }
+        if (!ObjectId.isValid(lowest.toString())) {
+            return result;
+        }
+        int pos = Arrays.binarySearch(_sorted,
+                                      ObjectId.parse(lowest.toString()));
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        while (pos < _sorted.length && _sorted[pos].startsWith(prefix)) {
+            result.add(_sorted[pos]);
+            pos += 1;
+        }
+        return result;
+    }
+
+    /** Returns the id of a best common ancestor of commits A and B: one
+     *  that is not an ancestor of any other common ancestor.  Commits are
+     *  visited newest generation first, starting from A and B, and the
+     *  walk stops at the first commit reached from both, so only commits
+     *  with larger generation numbers than the result are visited.
+     *  Returns null if A and B have no common ancestor. */
+    ObjectId mergeBase(ObjectId a, ObjectId b) {
+        int posA = position(a), posB = position(b);
+        if (posA == -1 || posB == -1) {
+            throw Utils.error("Commit missing from the commit graph.");
+        }
+        Map<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> Integer.compare(_generations[y], _generations[x]));
+        flags.merge(posA, FROM_A, (x, y) -> x | y);
+        flags.merge(posB, FROM_B, (x, y) -> x | y);
+        queue.add(posA);
+        if (posB != posA) {
+            queue.add(posB);
+        }
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            int flag = flags.get(pos);
+            if (flag == (FROM_A | FROM_B)) {
+                return id(pos);
+            }
+            for (int parent : _parents[pos]) {
+                Integer old = flags.get(parent);
+                if (old == null) {
+                    flags.put(parent, flag);
+                    queue.add(parent);
+                } else if ((old | flag) != old) {
+                    flags.put(parent, old | flag);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Adds commit ID with generation number GENERATION and parents
+     *  PARENTS, unless it is already present. */
+    private void add(ObjectId id, int generation, ObjectId[] parents) {
+        if (position(id) != -1) {
+            return;
+        }
+        int pos = _size;
+        if (pos == _generations.length) {
+            int capacity = 2 * pos + 16;
+            _generations = Arrays.copyOf(_generations, capacity);
+            _parents = Arrays.copyOf(_parents, capacity);
+            _words = Arrays.copyOf(_words, capacity * ObjectId.WORDS);
+        }
+        int[] parentPositions = new int[parents.length];
+        for (int i = 0; i < parents.length; i += 1) {
+            parentPositions[i] = position(parents[i]);
+        }
+        for (int k = 0; k < ObjectId.WORDS; k += 1) {
+            _words[pos * ObjectId.WORDS + k] = id.word(k);
+        }
+        _generations[pos] = generation;
+        _parents[pos] = parentPositions;
+        _size += 1;
+        if (2 * _size > _slots.length) {
+            rehash(4 * _size);
+        } else {
+            insert(id, pos);
+        }
+    }
+
+    /** Returns true iff the commit at position POS has id ID. */
+    private boolean hasId(int pos, ObjectId id) {
+        int w = pos * ObjectId.WORDS;
+        for (int k = 0; k < ObjectId.WORDS; k += 1) {
+            if (_words[w + k] != id.word(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records in _slots that commit ID is at position POS. */
+    private void insert(ObjectId id, int pos) {
+        int mask = _slots.length - 1;
+        int slot = id.hashCode() & mask;
+        while (_slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        _slots[slot] = pos + 1;
+    }
+
+    /** Replaces _slots with a table of at least MINSLOTS slots and
+     *  inserts every commit into it. */
+    private void rehash(int minSlots) {
+        _slots = new int[Integer.highestOneBit(minSlots - 1) << 1];
+        for (int pos = 0; pos < _size; pos += 1) {
+            insert(id(pos), pos);
+        }
+    }
+
+    /** Flag of commits reached from the first commit of a merge base
+     *  query. */
+    private static final int FROM_A = 1;
+    /** Flag of commits reached from the second commit of a merge base
+     *  query. */
+    private static final int FROM_B = 2;
+
+    /** The number of commits. */
+    private int _size;
+    /** The ids of the commits by position, five ints apiece. */
+    private int[] _words = new int[0];
+    /** An open-addressing table of commit positions plus one, keyed by
+     *  id, in which 0 marks an empty slot.  Its length is a power of two
+     *  at least twice the number of commits. */
+    private int[] _slots = new int[0];
+    /** Generation numbers by position. */
+    private int[] _generations = new int[0];
+    /** Parent positions by position. */
+    private int[][] _parents = new int[0][];
+    /** All commit ids in order, or null if not yet needed. */
+    private ObjectId[] _sorted;
+}
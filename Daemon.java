@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-running process that runs Gitlet commands on behalf of
+ *  clients, so that a script running many commands starts a JVM only
+ *  once and finds the repository's caches (the object store with its
+ *  pack indices, the blob cache, the stat index and the commit graph)
+ *  already loaded.  A daemon serves the repository in its working
+ *  directory through the Unix domain socket SOCKET, one command at a
+ *  time.  While a daemon is running, Main forwards every command to it,
+ *  so no other process changes the repository under the daemon's
+ *  caches.
+ *  <p>
+ *  Client and Main still start a JVM for each command, which costs more
+ *  than the command itself; scripts can avoid that by connecting to
+ *  SOCKET themselves.  The protocol is as follows, where an int is four
+ *  bytes, most significant first, as written by DataOutputStream.  Each
+ *  connection carries one command.  The client sends
+ *  <ul>
+ *  <li> an int, the number of arguments (as given to Main), and
+ *  <li> for each argument, an int length and that many bytes of the
+ *       argument in UTF-8.
+ *  </ul>
+ *  For example, "status" is the 14 bytes 00 00 00 01 00 00 00 06 and then
+ *  the letters of status.  The daemon runs the command and answers with
+ *  any number of frames, in the order the output was written, each
+ *  <ul>
+ *  <li> a byte naming the stream, STDOUT (1) or STDERR (2),
+ *  <li> an int length, and
+ *  <li> that many bytes of output,
+ *  </ul>
+ *  and then the byte END (0), after which it closes the connection.
+ *  There is no exit status: errors are reported on STDERR, as Main
+ *  reports them.  The command "daemon --ping" is answered with END
+ *  alone, and "daemon --stop" with END, after which the daemon exits.
+ *  A client that has not sent its whole command within the time given
+ *  by TIMEOUT_PROPERTY is disconnected without an answer.
+ *  @author Jianing Yu
+ */
+class Daemon {
+
+    /** The socket of the daemon of the repository in the working
+     *  directory. */
+    static final File SOCKET = new File(".gitlet", "daemon.sock");
+    /** The byte ending a reply. */
+    static final int END = 0;
+    /** The byte starting a frame of standard output. */
+    static final int STDOUT = 1;
+    /** The byte starting a frame of standard error. */
+    static final int STDERR = 2;
+    /** The size of the buffer of a command's standard output. */
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Name of the system property giving the time in milliseconds a
+     *  client has to send its command, after which the daemon drops it
+     *  and serves the next one. */
+    static final String TIMEOUT_PROPERTY = "gitlet.daemonReadTimeout";
+    /** Time allowed when TIMEOUT_PROPERTY is not set. */
+    static final long DEFAULT_TIMEOUT = 10_000;
+
+    /** Sends ARGS to the daemon of the repository in the working
+     *  directory and copies its output to the standard output and
+     *  error.  Returns false, having done nothing, if no daemon is
+     *  running. */
+    static boolean forward(String... args) {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (SocketChannel daemon = channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(daemon)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(daemon)));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int kind = in.readByte(); kind != END;
+                 kind = in.readByte()) {
+                PrintStream dest = kind == STDERR ? System.err : System.out;
+                System.out.flush();
+                int length = in.readInt();
+                while (length > 0) {
+                    int n = Math.min(length, buffer.length);
+                    in.readFully(buffer, 0, n);
+                    dest.write(buffer, 0, n);
+                    length -= n;
+                }
+            }
+        } catch (IOException excp) {
+            System.out.flush();
+            System.err.println("Lost the connection to the daemon.");
+        }
+        System.out.flush();
+        return true;
+    }
+
+    /** Serves the repository in the working directory until a client
+     *  sends the command "daemon --stop". */
+    static void serve() {
+        if (forward("daemon", "--ping")) {
+            throw Utils.error("A daemon is already running.");
+        }
+        SOCKET.delete();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            Main.keepWarm(true);
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel client = server.accept()) {
+                    stop = handle(client);
+                } catch (IOException excp) {
+                    /* The client went away; serve the next one. */
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Main.keepWarm(false);
+            SOCKET.delete();
+        }
+    }
+
+    /** Runs the command sent by CLIENT and sends it the output.  Returns
+     *  true iff the command was to stop the daemon. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        String[] args = readCommand(client);
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        boolean control = args.length == 2 && args[0].equals("daemon");
+        PrintStream stdout = System.out, stderr = System.err;
+        PrintStream commandOut = new PrintStream(new BufferedOutputStream(
+            new Frames(out, STDOUT, null), BUFFER_SIZE));
+        PrintStream commandErr =
+            new PrintStream(new Frames(out, STDERR, commandOut), true);
+        System.setOut(commandOut);
+        System.setErr(commandErr);
+        try {
+            if (!control) {
+                Main.run(args);
+            }
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            Main.keepWarm(true);
+        } finally {
+            commandOut.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        if (commandOut.checkError() || commandErr.checkError()) {
+            throw new IOException("client closed the connection");
+        }
+        out.writeByte(END);
+        out.flush();
+        return control && args[1].equals("--stop");
+    }
+
+    /** Returns the arguments sent by CLIENT.  Throws
+     *  SocketTimeoutException if they do not arrive in full within the
+     *  time given by TIMEOUT_PROPERTY, so that a client that connects
+     *  and stays silent cannot keep the daemon from serving others.
+     *  CLIENT is left in blocking mode. */
+    private static String[] readCommand(SocketChannel client)
+        throws IOException {
+        long deadline = System.currentTimeMillis()
+            + Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+        client.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            client.register(selector, SelectionKey.OP_READ);
+            String[] args =
+                new String[read(client, selector, deadline, 4).getInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                int length = read(client, selector, deadline, 4).getInt();
+                args[i] = StandardCharsets.UTF_8.decode(
+                    read(client, selector, deadline, length)).toString();
+            }
+            return args;
+        } finally {
+            client.configureBlocking(true);
+        }
+    }
+
+    /** Returns the next SIZE bytes from CLIENT, which is registered for
+     *  reading with SELECTOR, waiting for them no later than DEADLINE, a
+     *  time in milliseconds. */
+    private static ByteBuffer read(SocketChannel client, Selector selector,
+                                   long deadline, int size)
+        throws IOException {
+        if (size < 0) {
+            throw new IOException("bad request");
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        while (client.read(result) >= 0) {
+            if (!result.hasRemaining()) {
+                return result.flip();
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                throw new SocketTimeoutException("client sent nothing");
+            }
+            selector.select(left);
+            selector.selectedKeys().clear();
+        }
+        throw new EOFException();
+    }
+
+    /** An output stream that sends what is written to it as frames of
+     *  one stream of a reply. */
+    private static class Frames extends OutputStream {
+
+        /** Frames of stream KIND written to OUT.  Before each frame,
+         *  BEFORE, if not null, is flushed, so that output written to it
+         *  earlier is sent first. */
+        Frames(DataOutputStream out, int kind, OutputStream before) {
+            _out = out;
+            _kind = kind;
+            _before = before;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (_before != null) {
+                _before.flush();
+            }
+            _out.writeByte(_kind);
+            _out.writeInt(len);
+            _out.write(bytes, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        /** The reply. */
+        private final DataOutputStream _out;
+        /** The stream of the frames. */
+        private final int _kind;
+        /** The stream flushed before each frame, or null. */
+        private final OutputStream _before;
+    }
+}
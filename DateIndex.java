@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** An on-disk list of all commits ordered by commit time, so that
+ *  global-log can show them newest first without reading every commit.
+ *  The file holds fixed-size records of a commit time in milliseconds
+ *  followed by the commit's raw id, sorted by time.  New commits are
+ *  almost always the newest and are simply appended; for one that is
+ *  older than the last record (after a clock change, say) the file is
+ *  rewritten with the record in place, and atomically replaced, so
+ *  that a crash never leaves records half moved.  Readers ignore any
+ *  partial record at the end.
+ *  @author Jianing Yu
+ */
+class DateIndex {
+
+    /** The size of one record in bytes. */
+    static final int RECORD_SIZE = Long.BYTES + ObjectId.SIZE;
+    /** The number of records read from the file at a time. */
+    static final int BLOCK_RECORDS = 1024;
+
+    /** The index stored in FILE. */
+    DateIndex(File file) {
+        _file = file;
+    }
+
+    /** Records that commit ID was made at TIME milliseconds, and forces
+     *  the record to disk.  A partial record left at the end of the file
+     *  by an interrupted write is overwritten. */
+    void add(ObjectId id, long time) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(time);
+        id.write(record);
+        byte[] contents;
+        try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+            long count = file.length() / RECORD_SIZE;
+            if (count == 0 || timeAt(file, count - 1) <= time) {
+                file.seek(count * RECORD_SIZE);
+                file.write(record.array());
+                file.getChannel().force(false);
+                return;
+            }
+            int pos = (int) upperBound(file, count, time) * RECORD_SIZE;
+            contents = new byte[(int) count * RECORD_SIZE + RECORD_SIZE];
+            file.seek(0);
+            file.readFully(contents, 0, pos);
+            System.arraycopy(record.array(), 0, contents, pos, RECORD_SIZE);
+            file.readFully(contents, pos + RECORD_SIZE,
+                           contents.length - pos - RECORD_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeAtomically(_file, contents);
+    }
+
+    /** Returns the ids of the commits made between SINCE and UNTIL
+     *  milliseconds inclusive, newest first.  Records are read from the
+     *  file a block at a time as the iteration proceeds. */
+    Iterable<ObjectId> newestFirst(long since, long until) {
+        return () -> new Iterator<ObjectId>() {
+            /** Index of the next record to return, plus one. */
+            private long _next = start(until);
+            /** Records from _base up to _next. */
+            private ByteBuffer _block = ByteBuffer.allocate(0);
+            /** Index of the first record in _block. */
+            private long _base = _next;
+            /** The next id to return, or null if not yet read. */
+            private ObjectId _id;
+
+            @Override
+            public boolean hasNext() {
+                if (_id == null && _next > 0) {
+                    if (_next == _base) {
+                        readBlock();
+                    }
+                    _next -= 1;
+                    _block.position((int) ((_next - _base) * RECORD_SIZE));
+                    long time = _block.getLong();
+                    if (time < since) {
+                        _next = 0;
+                        return false;
+                    }
+                    _id = ObjectId.read(_block);
+                }
+                return _id != null;
+            }
+
+            @Override
+            public ObjectId next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ObjectId result = _id;
+                _id = null;
+                return result;
+            }
+
+            /** Reads the block of records that ends at _next. */
+            private void readBlock() {
+                _base = Math.max(0, _next - BLOCK_RECORDS);
+                byte[] bytes = new byte[(int) ((_next - _base) * RECORD_SIZE)];
+                try (RandomAccessFile file =
+                         new RandomAccessFile(_file, "r")) {
+                    file.seek(_base * RECORD_SIZE);
+                    file.readFully(bytes);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                _block = ByteBuffer.wrap(bytes);
+            }
+        };
+    }
+
+    /** Returns the number of records made at or before UNTIL. */
+    private long start(long until) {
+        if (!_file.isFile()) {
+            return 0;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_file, "r")) {
+            return upperBound(file, file.length() / RECORD_SIZE, until);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of the first COUNT records of FILE whose time is
+     *  at most TIME. */
+    private static long upperBound(RandomAccessFile file, long count,
+                                   long time) throws IOException {
+        long lo = 0, hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeAt(file, mid) <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the time of record INDEX of FILE. */
+    private static long timeAt(RandomAccessFile file, long index)
+        throws IOException {
+        file.seek(index * RECORD_SIZE);
+        return file.readLong();
+    }
+
+    /** The file holding the records. */
+    private final File _file;
+}
@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Binary deltas: descriptions of one byte array (the target) in terms of
+ *  another (the base), as used to store similar blobs in packs.  A delta
+ *  is the varint lengths of the base and target followed by a sequence
+ *  of instructions, each a varint N and then
+ *  <ul>
+ *  <li> if N is even, N / 2 literal bytes to append, or
+ *  <li> if N is odd, a varint offset: append (N - 1) / 2 bytes of the
+ *       base starting at that offset.
+ *  </ul>
+ *  @author Jianing Yu
+ */
+class Delta {
+
+    /** The size of the base blocks that are indexed when computing a
+     *  delta.  Matches shorter than this are not found. */
+    static final int BLOCK = 16;
+
+    /** Returns a delta producing TARGET from BASE, or null if BASE is too
+     *  short to be of use.  Every aligned block of BASE is indexed by its
+     *  hash; TARGET is then scanned for those blocks, and each match is
+     *  extended in both directions as far as the bytes agree. */
+    static byte[] compute(byte[] base, byte[] target) {
+        if (base.length < BLOCK) {
+            return null;
+        }
+        int[] blocks = index(base);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int literal = 0, i = 0;
+        while (i + BLOCK <= target.length) {
+            int off = lookup(blocks, hash(target, i));
+            if (off < 0 || !matches(base, off, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int b = off, t = i;
+            while (b > 0 && t > literal && base[b - 1] == target[t - 1]) {
+                b -= 1;
+                t -= 1;
+            }
+            int len = i - t + BLOCK;
+            while (b + len < base.length && t + len < target.length
+                   && base[b + len] == target[t + len]) {
+                len += 1;
+            }
+            writeInsert(out, target, literal, t);
+            writeVarint(out, ((long) len << 1) | 1);
+            writeVarint(out, b);
+            i = t + len;
+            literal = i;
+        }
+        writeInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns an open-addressing table of the aligned blocks of BASE:
+     *  pairs of a block's hash and its offset plus one, in which an
+     *  offset of 0 marks an empty slot.  The number of pairs is a power
+     *  of two at least twice the number of blocks.  Of blocks with the
+     *  same hash, the first is kept. */
+    private static int[] index(byte[] base) {
+        int count = base.length / BLOCK;
+        int[] table = new int[2 * (Integer.highestOneBit(2 * count) << 1)];
+        int mask = table.length / 2 - 1;
+        for (int off = 0; off + BLOCK <= base.length; off += BLOCK) {
+            int h = hash(base, off);
+            int slot = mix(h) & mask;
+            while (table[2 * slot + 1] != 0 && table[2 * slot] != h) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[2 * slot + 1] == 0) {
+                table[2 * slot] = h;
+                table[2 * slot + 1] = off + 1;
+            }
+        }
+        return table;
+    }
+
+    /** Returns the offset of the block with hash H in TABLE, as made by
+     *  index, or -1 if there is none. */
+    private static int lookup(int[] table, int h) {
+        int mask = table.length / 2 - 1;
+        for (int slot = mix(h) & mask;; slot = (slot + 1) & mask) {
+            if (table[2 * slot + 1] == 0) {
+                return -1;
+            }
+            if (table[2 * slot] == h) {
+                return table[2 * slot + 1] - 1;
+            }
+        }
+    }
+
+    /** Returns H with its bits spread, so that the low bits used to pick
+     *  a slot depend on all of them. */
+    private static int mix(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            long n = readVarint(delta, pos);
+            int len = (int) (n >>> 1);
+            if ((n & 1) == 0) {
+                System.arraycopy(delta, pos[0], result, size, len);
+                pos[0] += len;
+            } else {
+                int off = (int) readVarint(delta, pos);
+                System.arraycopy(base, off, result, size, len);
+            }
+            size += len;
+        }
+        return result;
+    }
+
+    /** Writes to OUT an instruction inserting bytes FROM to TO of
+     *  DATA, unless that range is empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int from, int to) {
+        if (from < to) {
+            writeVarint(out, (long) (to - from) << 1);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /** Writes VALUE to OUT as a varint: seven bits per byte, low bits
+     *  first, with the top bit set on all bytes but the last. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Returns the varint in DATA at position POS[0], advancing POS[0]
+     *  past it. */
+    static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = data[pos[0]];
+            pos[0] += 1;
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of DATA starting at OFF. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int i = off; i < off + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Returns true iff the LEN bytes of A at AOFF equal those of B at
+     *  BOFF. */
+    private static boolean matches(byte[] a, int aOff, byte[] b, int bOff,
+                                   int len) {
+        return Arrays.equals(a, aOff, aOff + len, b, bOff, bOff + len);
+    }
+}
@@ -0,0 +1,538 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line-by-line comparison and three-way merging of file contents.
+ *  Lines, each with its terminating newline if any, are first interned:
+ *  every distinct line gets a small int, so that lines are compared as
+ *  ints rather than byte by byte.  Lines of one file that occur nowhere
+ *  in the other can never be matched, so they are set aside before the
+ *  comparison proper.  That is Myers' O(ND) algorithm in its linear-space
+ *  form: the common prefix and suffix are trimmed, then the problem is
+ *  split at the middle snake of a shortest edit script and each half is
+ *  solved in the same way.  A three-way merge follows diff3: the lines of
+ *  the base that are matched in both other versions mark out stable
+ *  chunks, and each unstable chunk between them takes the change of the
+ *  one version that changed it, or becomes a conflict if both did.  A
+ *  unified diff groups the changed lines into hunks with CONTEXT lines
+ *  of context, and is written as it is computed.
+ *  @author Jianing Yu
+ */
+class Diff {
+
+    /** The line starting the lines of the current branch in a
+     *  conflict. */
+    static final String OURS_MARKER = "<<<<<<< HEAD";
+    /** The line separating the two sides of a conflict. */
+    static final String SEPARATOR_MARKER = "=======";
+    /** The line ending the lines of the given branch in a conflict. */
+    static final String THEIRS_MARKER = ">>>>>>>";
+    /** The number of unchanged lines shown around each change in a
+     *  unified diff. */
+    static final int CONTEXT = 3;
+    /** The number of leading bytes searched for a NUL byte to decide
+     *  whether a file is binary. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Returns, for each line of A, the position of the line of B it is
+     *  matched with by a shortest edit script from A to B, or -1 if it is
+     *  deleted.  A and B hold interned lines. */
+    static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int max = -1;
+        for (int line : a) {
+            max = Math.max(max, line);
+        }
+        for (int line : b) {
+            max = Math.max(max, line);
+        }
+        boolean[] inA = new boolean[max + 1], inB = new boolean[max + 1];
+        for (int line : a) {
+            inA[line] = true;
+        }
+        for (int line : b) {
+            inB[line] = true;
+        }
+        int[] keptA = kept(a, inB), keptB = kept(b, inA);
+        int[] linesA = new int[keptA.length], linesB = new int[keptB.length];
+        for (int i = 0; i < keptA.length; i += 1) {
+            linesA[i] = a[keptA[i]];
+        }
+        for (int i = 0; i < keptB.length; i += 1) {
+            linesB[i] = b[keptB[i]];
+        }
+        int[] matched = new Diff(linesA, linesB).match();
+        for (int i = 0; i < matched.length; i += 1) {
+            if (matched[i] >= 0) {
+                result[keptA[i]] = keptB[matched[i]];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the result of merging the changes from BASE to OURS with
+     *  those from BASE to THEIRS. */
+    static Merge merge(byte[] base, byte[] ours, byte[] theirs) {
+        Map<Line, Integer> interner = new HashMap<>();
+        Text o = new Text(base, interner), a = new Text(ours, interner),
+            b = new Text(theirs, interner);
+        int[] matchA = match(o._lines, a._lines);
+        int[] matchB = match(o._lines, b._lines);
+        ByteArrayOutputStream out =
+            new ByteArrayOutputStream(Math.max(ours.length, theirs.length));
+        boolean conflict = false;
+        int n = o.size(), i = 0, j = 0, k = 0;
+        while (i < n || j < a.size() || k < b.size()) {
+            int stable = 0;
+            while (i + stable < n && matchA[i + stable] == j + stable
+                   && matchB[i + stable] == k + stable) {
+                stable += 1;
+            }
+            if (stable > 0) {
+                o.write(out, i, i + stable);
+                i += stable;
+                j += stable;
+                k += stable;
+                continue;
+            }
+            int end = i;
+            while (end < n && (matchA[end] < 0 || matchB[end] < 0)) {
+                end += 1;
+            }
+            int endA = end < n ? matchA[end] : a.size(),
+                endB = end < n ? matchB[end] : b.size();
+            if (o.equals(i, end, a, j, endA)) {
+                b.write(out, k, endB);
+            } else if (o.equals(i, end, b, k, endB)
+                       || a.equals(j, endA, b, k, endB)) {
+                a.write(out, j, endA);
+            } else {
+                writeMarker(out, OURS_MARKER);
+                a.write(out, j, endA);
+                writeMarker(out, SEPARATOR_MARKER);
+                b.write(out, k, endB);
+                writeMarker(out, THEIRS_MARKER);
+                conflict = true;
+            }
+            i = end;
+            j = endA;
+            k = endB;
+        }
+        return new Merge(out.toByteArray(), conflict);
+    }
+
+    /** Writes to OUT the differences between BEFORE and AFTER, two
+     *  versions of the file at PATH, either of which is null if the file
+     *  is absent from that version, as a unified diff.  A file with a NUL
+     *  byte near its start is binary, and is only said to differ. */
+    static void unified(OutputStream out, String path,
+                        byte[] before, byte[] after) {
+        String oldName = before == null ? "/dev/null" : "a/" + path,
+            newName = after == null ? "/dev/null" : "b/" + path;
+        try {
+            writeLine(out, "diff --git a/" + path + " b/" + path);
+            if (isBinary(before) || isBinary(after)) {
+                writeLine(out, "Binary files " + oldName + " and " + newName
+                          + " differ");
+                return;
+            }
+            writeLine(out, "--- " + oldName);
+            writeLine(out, "+++ " + newName);
+            Map<Line, Integer> interner = new HashMap<>();
+            Text a = new Text(before == null ? new byte[0] : before, interner),
+                b = new Text(after == null ? new byte[0] : after, interner);
+            int[] match = match(a._lines, b._lines);
+            List<int[]> blocks = new ArrayList<>();
+            int i = 0, j = 0;
+            while (i < a.size() || j < b.size()) {
+                if (i < a.size() && match[i] == j) {
+                    i += 1;
+                    j += 1;
+                    continue;
+                }
+                int i0 = i, j0 = j;
+                while (i < a.size() && match[i] < 0) {
+                    i += 1;
+                }
+                j = i < a.size() ? match[i] : b.size();
+                blocks.add(new int[] { i0, i, j0, j });
+            }
+            for (int first = 0, last = 0; first < blocks.size();
+                 first = last + 1) {
+                last = first;
+                while (last + 1 < blocks.size()
+                       && blocks.get(last + 1)[0] - blocks.get(last)[1]
+                       <= 2 * CONTEXT) {
+                    last += 1;
+                }
+                writeHunk(out, a, b, blocks.subList(first, last + 1));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes to OUT the hunk of a unified diff from A to B covering
+     *  BLOCKS, each {i0, i1, j0, j1}: lines i0 to i1 of A, exclusive,
+     *  are replaced by lines j0 to j1 of B.  The lines between blocks are
+     *  unchanged. */
+    private static void writeHunk(OutputStream out, Text a, Text b,
+                                  List<int[]> blocks) throws IOException {
+        int[] first = blocks.get(0), last = blocks.get(blocks.size() - 1);
+        int aStart = Math.max(0, first[0] - CONTEXT),
+            bStart = first[2] - (first[0] - aStart),
+            aEnd = Math.min(a.size(), last[1] + CONTEXT),
+            bEnd = last[3] + (aEnd - last[1]);
+        writeLine(out, "@@ -" + range(aStart, aEnd - aStart) + " +"
+                  + range(bStart, bEnd - bStart) + " @@");
+        int line = aStart;
+        for (int[] block : blocks) {
+            a.writeLines(out, ' ', line, block[0]);
+            a.writeLines(out, '-', block[0], block[1]);
+            b.writeLines(out, '+', block[2], block[3]);
+            line = block[1];
+        }
+        a.writeLines(out, ' ', line, aEnd);
+    }
+
+    /** Returns the range of COUNT lines starting at line START, counting
+     *  from 0, as written in a hunk header. */
+    private static String range(int start, int count) {
+        if (count == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    /** Returns true iff CONTENTS are not null and have a NUL byte among
+     *  their first BINARY_PROBE bytes. */
+    private static boolean isBinary(byte[] contents) {
+        if (contents != null) {
+            for (int i = 0; i < Math.min(contents.length, BINARY_PROBE);
+                 i += 1) {
+                if (contents[i] == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Writes LINE and a newline to OUT. */
+    private static void writeLine(OutputStream out, String line)
+        throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+
+    /** Returns the whole of OURS and THEIRS, either of which may be null
+     *  for a deleted file, as one conflict. */
+    static byte[] conflict(byte[] ours, byte[] theirs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeMarker(out, OURS_MARKER);
+        if (ours != null) {
+            out.write(ours, 0, ours.length);
+        }
+        writeMarker(out, SEPARATOR_MARKER);
+        if (theirs != null) {
+            out.write(theirs, 0, theirs.length);
+        }
+        writeMarker(out, THEIRS_MARKER);
+        return out.toByteArray();
+    }
+
+    /** The result of a three-way merge. */
+    static class Merge {
+        /** A merge resulting in CONTENTS, which hold conflicts iff
+         *  CONFLICT. */
+        Merge(byte[] contents, boolean conflict) {
+            _contents = contents;
+            _conflict = conflict;
+        }
+
+        /** The merged contents. */
+        final byte[] _contents;
+        /** True iff the merged contents hold conflicts. */
+        final boolean _conflict;
+    }
+
+    /** The lines of some contents, numbered by an interner. */
+    static class Text {
+        /** The lines of CONTENTS, numbered by INTERNER, which gives each
+         *  distinct line it has not seen yet the next number. */
+        Text(byte[] contents, Map<Line, Integer> interner) {
+            _contents = contents;
+            int count = 0;
+            for (byte c : contents) {
+                if (c == '\n') {
+                    count += 1;
+                }
+            }
+            if (contents.length > 0 && contents[contents.length - 1] != '\n') {
+                count += 1;
+            }
+            _starts = new int[count + 1];
+            for (int p = 0, line = 0; p < contents.length; p += 1) {
+                if (contents[p] == '\n') {
+                    line += 1;
+                    _starts[line] = p + 1;
+                }
+            }
+            _starts[count] = contents.length;
+            _lines = new int[count];
+            for (int line = 0; line < count; line += 1) {
+                Line key = new Line(contents, _starts[line],
+                                    _starts[line + 1]);
+                Integer number = interner.get(key);
+                if (number == null) {
+                    number = interner.size();
+                    interner.put(key, number);
+                }
+                _lines[line] = number;
+            }
+        }
+
+        /** Returns the number of lines. */
+        int size() {
+            return _lines.length;
+        }
+
+        /** Returns the number of each line. */
+        int[] lines() {
+            return _lines;
+        }
+
+        /** Writes line LINE to OUT, ending it with a newline if it has
+         *  none. */
+        void printLine(OutputStream out, int line) throws IOException {
+            int start = _starts[line], end = _starts[line + 1];
+            out.write(_contents, start, end - start);
+            if (_contents[end - 1] != '\n') {
+                out.write('\n');
+            }
+        }
+
+        /** Writes lines FROM to TO, exclusive, to OUT. */
+        void write(ByteArrayOutputStream out, int from, int to) {
+            out.write(_contents, _starts[from], _starts[to] - _starts[from]);
+        }
+
+        /** Writes lines FROM to TO, exclusive, to OUT, each after the
+         *  character PREFIX, as in a unified diff.  A last line without a
+         *  newline is ended with one and followed by a note saying so. */
+        void writeLines(OutputStream out, char prefix, int from, int to)
+            throws IOException {
+            for (int line = from; line < to; line += 1) {
+                int start = _starts[line], end = _starts[line + 1];
+                out.write(prefix);
+                out.write(_contents, start, end - start);
+                if (_contents[end - 1] != '\n') {
+                    out.write(NO_NEWLINE);
+                }
+            }
+        }
+
+        /** Returns true iff lines FROM to TO, exclusive, are the same as
+         *  lines OTHERFROM to OTHERTO of OTHER. */
+        boolean equals(int from, int to, Text other,
+                       int otherFrom, int otherTo) {
+            return Arrays.equals(_lines, from, to,
+                                 other._lines, otherFrom, otherTo);
+        }
+
+        /** The contents. */
+        private final byte[] _contents;
+        /** The offset in _contents of each line, followed by the length
+         *  of _contents. */
+        private final int[] _starts;
+        /** The number of each line. */
+        private final int[] _lines;
+    }
+
+    /** A line of some contents, as a key for interning. */
+    static class Line {
+        /** The line made of bytes START to END, exclusive, of
+         *  CONTENTS. */
+        Line(byte[] contents, int start, int end) {
+            _contents = contents;
+            _start = start;
+            _end = end;
+            int hash = 1;
+            for (int p = start; p < end; p += 1) {
+                hash = 31 * hash + contents[p];
+            }
+            _hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                && Arrays.equals(_contents, _start, _end,
+                                 other._contents, other._start, other._end);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The contents holding this line. */
+        private final byte[] _contents;
+        /** The offset of the first byte of this line. */
+        private final int _start;
+        /** The offset just past the last byte of this line. */
+        private final int _end;
+        /** The hash code of this line. */
+        private final int _hash;
+    }
+
+    /** A comparison of the interned lines A with the interned lines B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _match = new int[a.length];
+        Arrays.fill(_match, -1);
+        int size = 2 * ((a.length + b.length + 1) / 2 + 1) + 1;
+        _offset = size / 2;
+        _forward = new int[size];
+        _backward = new int[size];
+    }
+
+    /** Returns, for each line of _a, the line of _b matched with it, or
+     *  -1. */
+    private int[] match() {
+        compare(0, _a.length, 0, _b.length);
+        return _match;
+    }
+
+    /** Matches lines ALO to AHI of _a, exclusive, with lines BLO to BHI
+     *  of _b. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            _match[aLo] = bLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+            _match[aHi] = bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, snake[0], bLo, snake[1]);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            _match[x] = y;
+        }
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Returns the start and end of the middle snake of a shortest edit
+     *  script from lines ALO to AHI of _a to lines BLO to BHI of _b, as
+     *  {x0, y0, x1, y1}: lines x0 to x1 of _a match lines y0 to y1 of
+     *  _b.  The script is searched for from both ends at once, keeping
+     *  only the furthest point reached on each diagonal, until the two
+     *  searches meet. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int[] fwd = _forward, bwd = _backward;
+        int off = _offset;
+        fwd[off + 1] = 0;
+        bwd[off + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d
+                    || k != d && fwd[off + k - 1] < fwd[off + k + 1]
+                    ? fwd[off + k + 1] : fwd[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fwd[off + k] = x;
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1)
+                    && x + bwd[off + delta - k] >= n) {
+                    return new int[] {
+                        aLo + x0, bLo + y0, aLo + x, bLo + y
+                    };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d
+                    || k != d && bwd[off + k - 1] < bwd[off + k + 1]
+                    ? bwd[off + k + 1] : bwd[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                bwd[off + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + fwd[off + delta - k] >= n) {
+                    return new int[] {
+                        aHi - x, bHi - y, aHi - x0, bHi - y0
+                    };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns the positions of the lines of LINES that are marked in
+     *  PRESENT. */
+    private static int[] kept(int[] lines, boolean[] present) {
+        int count = 0;
+        for (int line : lines) {
+            if (present[line]) {
+                count += 1;
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0, j = 0; i < lines.length; i += 1) {
+            if (present[lines[i]]) {
+                result[j] = i;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Writes the line MARKER to OUT. */
+    private static void writeMarker(ByteArrayOutputStream out,
+                                    String marker) {
+        byte[] bytes = (marker + System.lineSeparator())
+            .getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** What ends a line without a newline in a unified diff. */
+    private static final byte[] NO_NEWLINE =
+        "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The lines being compared. */
+    private final int[] _a, _b;
+    /** For each line of _a, the line of _b matched with it, or -1. */
+    private final int[] _match;
+    /** The furthest point reached on each diagonal by the forward and
+     *  backward searches, indexed by diagonal plus _offset. */
+    private final int[] _forward, _backward;
+    /** The index in _forward and _backward of diagonal 0. */
+    private final int _offset;
+}
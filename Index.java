@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A cache of the SHA-1 hashes of working files, keyed by the files' stat
+ *  data (size, modification time and file key).  As long as a file's
+ *  stat data is unchanged, its contents are assumed unchanged too, so
+ *  its hash can be reported without reading it.  Lookups and updates
+ *  may be made concurrently from several threads.
+ *  @author Jianing Yu
+ */
+class Index {
+
+    /** Files modified less than this many milliseconds before their stat
+     *  data was recorded might change again without their modification
+     *  time changing, and so are always re-read. */
+    static final long RACY_WINDOW = 2000;
+
+    /** The magic number of an index file. */
+    static final int MAGIC = 0x474c4958;
+    /** The format version of an index file. */
+    static final int VERSION = 1;
+
+    /** Returns the index stored in FILE, or an empty one if there is
+     *  none. */
+    static Index read(File file) {
+        if (!file.isFile()) {
+            return new Index();
+        }
+        Codec.Decoder in = new Codec.Decoder(Utils.readContents(file),
+                                             MAGIC, VERSION);
+        Index index = new Index();
+        for (File path : in.paths()) {
+            Entry entry = new Entry();
+            entry._size = in.varint();
+            entry._mtime = in.signed();
+            entry._key = in.string();
+            entry._recorded = in.signed();
+            entry._hash = in.id();
+            index._entries.put(path, entry);
+        }
+        return index;
+    }
+
+    /** Writes this index to FILE if it has changed since it was read. */
+    void write(File file) {
+        if (_changed) {
+            Map<File, Entry> entries = new TreeMap<>(_entries);
+            Codec.Encoder out = new Codec.Encoder(MAGIC, VERSION);
+            out.paths(entries.keySet());
+            for (Entry entry : entries.values()) {
+                out.varint(entry._size).signed(entry._mtime)
+                    .string(entry._key).signed(entry._recorded)
+                    .id(entry._hash);
+            }
+            Utils.writeAtomically(file, out.toByteArray());
+            _changed = false;
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  FILE is only read if its stat data differs from
+     *  what was recorded with its hash. */
+    ObjectId hash(File file) {
+        Entry current = stat(file, null);
+        Entry recorded = _entries.get(file);
+        if (recorded != null && recorded.matches(current)) {
+            return recorded._hash;
+        }
+        ObjectId hash = ObjectId.hash(file);
+        current._hash = hash;
+        _entries.put(file, current);
+        _changed = true;
+        return hash;
+    }
+
+    /** Returns the hash recorded for FILE if its stat data is unchanged
+     *  since, or null otherwise. */
+    ObjectId cached(File file) {
+        Entry recorded = _entries.get(file);
+        if (recorded == null || !file.isFile()
+            || !recorded.matches(stat(file, null))) {
+            return null;
+        }
+        return recorded._hash;
+    }
+
+    /** Records that FILE, which must be a normal file, currently has
+     *  contents with SHA-1 hash HASH. */
+    void record(File file, ObjectId hash) {
+        _entries.put(file, stat(file, hash));
+        _changed = true;
+    }
+
+    /** Forgets anything recorded about FILE. */
+    void remove(File file) {
+        if (_entries.remove(file) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Returns the current stat data of FILE with hash HASH. */
+    private static Entry stat(File file, ObjectId hash) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Entry entry = new Entry();
+            entry._size = attrs.size();
+            entry._mtime = attrs.lastModifiedTime().toMillis();
+            entry._key = Objects.toString(attrs.fileKey(), null);
+            entry._recorded = System.currentTimeMillis();
+            entry._hash = hash;
+            return entry;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The stat data and hash of one file. */
+    private static class Entry {
+
+        /** Returns true iff OTHER has the same stat data as this entry and
+         *  this entry was recorded long enough after the file was last
+         *  modified to be trusted. */
+        boolean matches(Entry other) {
+            return _size == other._size && _mtime == other._mtime
+                && Objects.equals(_key, other._key)
+                && _recorded - _mtime >= RACY_WINDOW;
+        }
+
+        /** The file size in bytes. */
+        private long _size;
+        /** The modification time in milliseconds. */
+        private long _mtime;
+        /** The file key (device and inode, where available). */
+        private String _key;
+        /** The time at which this entry was recorded, in milliseconds. */
+        private long _recorded;
+        /** The SHA-1 hash of the contents. */
+        private ObjectId _hash;
+    }
+
+    /** Recorded entries by file. */
+    private final Map<File, Entry> _entries = new ConcurrentHashMap<>();
+    /** True iff _entries has changed since this index was read. */
+    private volatile boolean _changed;
+}
@@ -1,14 +1,23 @@
 package gitlet;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,9 +25,16 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -28,14 +44,27 @@ import java.util.function.Predicate;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ....  If a daemon is serving the repository,
+     *  the command is run by the daemon. */
     public static void main(String... args) {
+        boolean start = args.length == 1 && args[0].equals("daemon");
+        if (start || !Daemon.forward(args)) {
+            run(args);
+        }
+    }
+
+    /**
+     * Run a command in this process.  Unlike main, never exits, so that
+     * a daemon can run one command after another.
+     * @param args the command and its operands.
+     */
+    static void run(String... args) {
         try {
             Locale.setDefault(Locale.ENGLISH);
             List<String> argList = Arrays.asList(args);
             if (argList.size() == 0) {
                 System.err.println("Please enter a command.");
-                System.exit(0);
+                return;
             }
             Command found = null;
             for (Command command : COMMANDS) {
@@ -89,6 +118,109 @@ public class Main {
         private final Consumer<List<String>> _processor;
     }
 
+    /**
+     * Limits on the commits shown by log and global-log, given by the
+     * options -n COUNT, --since DATE, --until DATE and -- PATH.  Dates are
+     * yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss in the local time zone.  With a
+     * PATH, only commits that changed the file or directory there
+     * relative to their first parent are shown.
+     */
+    static class LogLimits {
+        /**
+         * Parse limits, reporting "Incorrect operands." if they are
+         * invalid.  The command table only checks that the options come
+         * in pairs, so that they are parsed once, here.
+         * @param ops the options.
+         * @return the limits.
+         */
+        static LogLimits parse(List<String> ops) {
+            LogLimits limits = new LogLimits();
+            try {
+                for (int i = 0; i < ops.size(); i += 2) {
+                    if (i + 1 == ops.size()) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    String value = ops.get(i + 1);
+                    switch (ops.get(i)) {
+                    case "-n":
+                        limits._count = Integer.parseInt(value);
+                        break;
+                    case "--since":
+                        limits._since = parseDate(value);
+                        break;
+                    case "--until":
+                        limits._until = parseDate(value);
+                        break;
+                    case "--":
+                        limits._path = ChangedPaths.path(workFile(value));
+                        if (limits._path.isEmpty()) {
+                            throw Utils.error("Incorrect operands.");
+                        }
+                        break;
+                    default:
+                        throw Utils.error("Incorrect operands.");
+                    }
+                }
+            } catch (NumberFormatException | DateTimeParseException excp) {
+                throw Utils.error("Incorrect operands.");
+            }
+            if (limits._count < 0) {
+                throw Utils.error("Incorrect operands.");
+            }
+            return limits;
+        }
+
+        /**
+         * Parse a date.
+         * @param value the date.
+         * @return milliseconds since the epoch.
+         */
+        private static long parseDate(String value) {
+            LocalDateTime time = value.contains("T")
+                    ? LocalDateTime.parse(value)
+                    : LocalDate.parse(value).atStartOfDay();
+            return time.atZone(ZoneId.systemDefault())
+                    .toInstant().toEpochMilli();
+        }
+
+        /**
+         * Whether a commit is inside the time window.
+         * @param commit the commit.
+         * @return true iff it is neither too old nor too new.
+         */
+        boolean contains(Git.Commit commit) {
+            long time = commit._date.getTime();
+            return time >= _since && time <= _until;
+        }
+
+        /**
+         * Whether a commit is older than the time window.
+         * @param commit the commit.
+         * @return true iff it is too old.
+         */
+        boolean isBefore(Git.Commit commit) {
+            return commit._date.getTime() < _since;
+        }
+
+        /**
+         * The maximum number of commits to show.
+         */
+        private int _count = Integer.MAX_VALUE;
+        /**
+         * The earliest commit time to show, in milliseconds.
+         */
+        private long _since = Long.MIN_VALUE;
+        /**
+         * The latest commit time to show, in milliseconds.
+         */
+        private long _until = Long.MAX_VALUE;
+        /**
+         * The path whose changes to show, with '/' between names, or null
+         * for all commits.
+         */
+        private String _path;
+    }
+
     /**
      * All supported commands.
      */
@@ -96,19 +228,22 @@ public class Main {
         new Command("init",
             ops -> ops.size() == 0, ops -> init()),
         new Command("add",
-            ops -> ops.size() == 1, ops -> add(ops.get(0))),
+            ops -> ops.size() >= 1, Main::add),
         new Command("commit",
             ops -> ops.size() == 1, ops -> commit(ops.get(0))),
         new Command("log",
-            ops -> ops.size() == 0, ops -> log()),
+            ops -> ops.size() % 2 == 0, ops -> log(LogLimits.parse(ops))),
         new Command("checkout",
             ops -> ops.size() >= 1 && ops.size() <= 3, Main::checkout),
         new Command("rm",
             ops -> ops.size() == 1, ops -> rm(ops.get(0))),
         new Command("global-log",
-            ops -> ops.size() == 0, ops -> globalLog()),
+            ops -> ops.size() % 2 == 0,
+            ops -> globalLog(LogLimits.parse(ops))),
         new Command("find",
-            ops -> ops.size() == 1, ops -> find(ops.get(0))),
+            ops -> ops.size() == 1
+                || ops.size() == 2 && ops.get(0).equals("--grep"),
+            Main::find),
         new Command("status",
             ops -> ops.size() == 0, ops -> status()),
         new Command("branch",
@@ -118,7 +253,21 @@ public class Main {
         new Command("reset",
             ops -> ops.size() == 1, ops -> reset(ops.get(0))),
         new Command("merge",
-            ops -> ops.size() == 1, ops -> merge(ops.get(0)))
+            ops -> ops.size() == 1, ops -> merge(ops.get(0))),
+        new Command("pack",
+            ops -> ops.size() == 0, ops -> pack()),
+        new Command("gc",
+            ops -> ops.isEmpty()
+                || ops.size() == 1 && ops.get(0).equals("--repack"),
+            Main::gc),
+        new Command("diff",
+            ops -> ops.size() <= 2, Main::diff),
+        new Command("blame",
+            ops -> ops.size() == 1, ops -> blame(ops.get(0))),
+        new Command("daemon",
+            ops -> ops.isEmpty()
+                || ops.size() == 1 && ops.get(0).equals("--stop"),
+            Main::daemon)
     );
 
     /*  Commands  */
@@ -139,41 +288,75 @@ public class Main {
         }
 
         Git git = new Git();
+        git._store = new ObjectStore(Utils.join(gitlet, "objects"));
+        git._blobs = new BlobCache(git._store);
 
+        git.putTree(new HashMap<>());
         Git.Commit commit = new Git.Commit("initial commit", new Date(0));
-        git._commits = new HashMap<>(
-                Collections.singletonMap(commit._hash, commit));
+        git.putCommit(commit);
         git._branches = new TreeMap<>(
                 Collections.singletonMap("master", commit._hash)
         );
         git._currentBranch = "master";
         git._headPtr = commit._hash;
-        git._files = new HashMap<>();
         git._staged = new HashMap<>();
 
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
     }
 
     /**
-     * The add command.
-     * @param filename The file to be added.
+     * The add command.  A staged file can only be a file or a directory,
+     * so staging one unstages any staged path above or below it, which
+     * it replaced in the working directory.
+     * @param filenames The files to be added.
      */
-    private static void add(String filename) {
+    private static void add(List<String> filenames) {
         Git git = checkInitialized();
 
-        File file = new File(filename);
-        if (!file.exists()) {
-            throw Utils.error("File does not exist.");
+        List<File> files = new ArrayList<>();
+        for (String filename : filenames) {
+            File file = workFile(filename);
+            if (!file.isFile()) {
+                throw Utils.error("File does not exist.");
+            }
+            files.add(file);
         }
 
-        byte[] content = Utils.readContents(file);
-        String sha1 = Utils.sha1(content);
-        git._files.put(sha1, content);
-        git._staged.put(file, sha1);
+        Index index = git.index();
+        Map<File, ObjectId> hashes = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            ObjectId sha1 = index.cached(file);
+            if (sha1 == null || !git._store.contains(sha1)) {
+                sha1 = git.putBlob(file);
+                index.record(file, sha1);
+            }
+            hashes.put(file, sha1);
+        });
+        Set<File> dirs = new HashSet<>();
+        for (File file : hashes.keySet()) {
+            for (File dir = file.getParentFile(); dir != null;
+                 dir = dir.getParentFile()) {
+                dirs.add(dir);
+            }
+        }
+        git._staged.keySet().removeIf(staged -> {
+            if (dirs.contains(staged)) {
+                return true;
+            }
+            for (File dir = staged.getParentFile(); dir != null;
+                 dir = dir.getParentFile()) {
+                if (hashes.containsKey(dir)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        git._staged.putAll(hashes);
 
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
+        git.saveIndex();
     }
 
     /**
@@ -183,8 +366,9 @@ public class Main {
     private static void commit(String message) {
         Git git = checkInitialized();
 
-        Git.Commit head = git._commits.get(git._headPtr);
-        if (head._committed.equals(git._staged)) {
+        Git.Commit head = git.commit(git._headPtr);
+        ObjectId tree = git.putTree(head, git._staged);
+        if (tree.equals(head._tree)) {
             throw Utils.error("No changes added to the commit.");
         }
         if (message == null || message.length() == 0) {
@@ -193,14 +377,14 @@ public class Main {
 
         Git.Commit commit = new Git.Commit(
                 message, new Date(),
-                Collections.singletonList(git._headPtr), git._staged);
+                Collections.singletonList(git._headPtr), tree);
 
         git._headPtr = commit._hash;
-        git._commits.put(commit._hash, commit);
+        git.putCommit(commit);
         git._branches.put(git._currentBranch, commit._hash);
 
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
     }
 
     /**
@@ -210,11 +394,13 @@ public class Main {
     private static void rm(String fileName) {
         Git git = checkInitialized();
 
-        File file = new File(fileName);
-        Git.Commit head = git._commits.get(git._headPtr);
-        if (head._committed.containsKey(file)) {
+        File file = workFile(fileName);
+        Git.Commit head = git.commit(git._headPtr);
+        if (git.files(head).containsKey(file)) {
             git._staged.remove(file);
-            file.delete();
+            if (file.isFile()) {
+                delete(git, file);
+            }
         } else if (git._staged.containsKey(file)) {
             git._staged.remove(file);
         } else {
@@ -222,36 +408,68 @@ public class Main {
         }
 
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
+        git.saveIndex();
     }
 
 
     /**
-     * The global-log command.
+     * The global-log command.  Shows commits newest first, reading them
+     * from the date index as it goes.
+     * @param limits which commits to show.
      */
-    private static void globalLog() {
+    private static void globalLog(LogLimits limits) {
         Git git = checkInitialized();
 
-        for (Git.Commit commit : git._commits.values()) {
-            logCommit(commit);
+        PrintWriter out = logWriter();
+        int count = 0;
+        for (ObjectId id : git.dates().newestFirst(limits._since,
+                                                 limits._until)) {
+            if (count == limits._count) {
+                break;
+            }
+            Git.Commit commit = git.commit(id);
+            if (limits._path == null
+                || changes(git, commit, firstParent(git, commit),
+                           limits._path)) {
+                logCommit(out, commit);
+                count += 1;
+            }
         }
+        out.flush();
     }
 
     /**
-     * The find command.
-     * @param message commit message..
+     * The find command.  With one argument, finds the commits with exactly
+     * that message; with --grep, those whose message contains the text.
+     * @param args Arguments of the command.
      */
-    private static void find(String message) {
+    private static void find(List<String> args) {
         Git git = checkInitialized();
 
-        boolean found = false;
-        for (Git.Commit commit : git._commits.values()) {
-            if (commit._message.equals(message)) {
-                found = true;
-                System.out.println(commit._hash);
+        List<ObjectId> found;
+        if (args.size() == 1) {
+            found = git.messages().exact(args.get(0));
+        } else {
+            String text = args.get(1);
+            List<ObjectId> candidates = git.messages().containing(text);
+            if (candidates == null) {
+                candidates = new ArrayList<>();
+                for (int i = 0; i < git.graph().size(); i += 1) {
+                    candidates.add(git.graph().id(i));
+                }
+            }
+            found = new ArrayList<>();
+            for (ObjectId id : candidates) {
+                if (git.commit(id)._message.contains(text)) {
+                    found.add(id);
+                }
             }
         }
-        if (!found) {
+        for (ObjectId id : found) {
+            System.out.println(id);
+        }
+        if (found.isEmpty()) {
             System.err.println("Found no commit with that message.");
         }
     }
@@ -269,13 +487,13 @@ public class Main {
             System.out.println(name);
         }
         System.out.printf("%n=== Staged Files ===%n");
-        Git.Commit head = git._commits.get(git._headPtr);
+        Map<File, ObjectId> committed = git.files(git.commit(git._headPtr));
         Set<String> result = new TreeSet<>();
-        for (Map.Entry<File, String> entry : git._staged.entrySet()) {
+        for (Map.Entry<File, ObjectId> entry : git._staged.entrySet()) {
             File file = entry.getKey();
-            if (!head._committed.containsKey(file)
-                    || !head._committed.get(file).equals(entry.getValue())) {
-                result.add(file.getName());
+            if (!committed.containsKey(file)
+                    || !committed.get(file).equals(entry.getValue())) {
+                result.add(file.getPath());
             }
         }
         for (String s : result) {
@@ -283,83 +501,134 @@ public class Main {
         }
         System.out.printf("%n=== Removed Files ===%n");
         result.clear();
-        for (Map.Entry<File, String> entry : head._committed.entrySet()) {
-            File file = entry.getKey();
+        for (File file : committed.keySet()) {
             if (!git._staged.containsKey(file)) {
-                result.add(file.getName());
+                result.add(file.getPath());
             }
         }
         for (String s : result) {
             System.out.println(s);
         }
         System.out.printf("%n=== Modifications Not Staged For Commit ===%n");
-        Map<File, String> sorted = new TreeMap<>(git._staged);
-        for (Map.Entry<File, String> entry : sorted.entrySet()) {
-            if (!entry.getKey().exists()) {
-                System.out.print(entry.getKey().getName());
+        Map<File, ObjectId> sorted = new TreeMap<>(git._staged);
+        Map<File, ObjectId> hashes =
+                WorkTree.hashes(git.index(), sorted.keySet());
+        for (Map.Entry<File, ObjectId> entry : sorted.entrySet()) {
+            ObjectId current = hashes.get(entry.getKey());
+            if (current == null) {
+                System.out.print(entry.getKey().getPath());
                 System.out.println(" (deleted)");
-            } else {
-                byte[] origin = git._files.get(entry.getValue());
-                byte[] current = Utils.readContents(entry.getKey());
-
-                if (!Arrays.equals(origin, current)) {
-                    System.out.print(entry.getKey().getName());
-                    System.out.println(" (modified)");
-                }
+            } else if (!current.equals(entry.getValue())) {
+                System.out.print(entry.getKey().getPath());
+                System.out.println(" (modified)");
             }
         }
         System.out.printf("%n=== Untracked Files ===%n");
-        List<String> files = Utils.plainFilenamesIn(".");
-        for (String file : files) {
-            if (!git._staged.containsKey(new File(file))) {
-                System.out.println(file);
+        for (File file : WorkTree.plainFiles()) {
+            if (!git._staged.containsKey(file)) {
+                System.out.println(file.getPath());
             }
         }
         System.out.println();
+        git.saveIndex();
     }
 
     /**
-     * The git command.
+     * The log command.  Follows first parents from the head, and stops as
+     * soon as enough commits were shown or the commits get too old.
+     * @param limits which commits to show.
      */
-    private static void log() {
+    private static void log(LogLimits limits) {
         Git git = checkInitialized();
 
-        String hash = git._headPtr;
-        while (hash != null) {
-            Git.Commit commit = git._commits.get(hash);
-            if (commit == null) {
-                break;
-            }
-            logCommit(commit);
-            if (commit._parents.isEmpty()) {
-                break;
+        PrintWriter out = logWriter();
+        Git.Commit commit = git.commit(git._headPtr);
+        int count = 0;
+        while (commit != null && count < limits._count
+               && !limits.isBefore(commit)) {
+            Git.Commit parent = firstParent(git, commit);
+            if (limits.contains(commit)
+                && (limits._path == null
+                    || changes(git, commit, parent, limits._path))) {
+                logCommit(out, commit);
+                count += 1;
             }
-            hash = commit._parents.get(0);
+            commit = parent;
+        }
+        out.flush();
+    }
+
+    /**
+     * The first parent of a commit.
+     * @param git git.
+     * @param commit the commit.
+     * @return its first parent, or null if it has none.
+     */
+    private static Git.Commit firstParent(Git git, Git.Commit commit) {
+        return commit._parents.isEmpty() ? null
+            : git.commit(commit._parents.get(0));
+    }
+
+    /**
+     * Whether a commit changed a path relative to its first parent.  The
+     * commit's changed-path filter usually answers no without reading
+     * any trees; otherwise the path is looked up in both trees.
+     * @param git git.
+     * @param commit the commit.
+     * @param parent its first parent, or null if it has none.
+     * @param path the path, with '/' between names.
+     * @return true iff the file or directory at path differs.
+     */
+    private static boolean changes(Git git, Git.Commit commit,
+                                   Git.Commit parent, String path) {
+        int pos = git.graph().position(commit._hash);
+        if (git.changedPaths().excludes(pos, commit._hash, path)) {
+            return false;
         }
+        return !Objects.equals(
+            Tree.lookup(git._store, commit._tree, path),
+            parent == null ? null
+                : Tree.lookup(git._store, parent._tree, path));
+    }
+
+    /**
+     * The format of commit dates in logs.
+     */
+    private static final DateTimeFormatter LOG_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z",
+                    Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+    /**
+     * A buffered writer to the standard output, which must be flushed
+     * when done.
+     * @return the writer.
+     */
+    private static PrintWriter logWriter() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
     }
 
     /**
      * Logs a commit.
+     * @param out where to log to.
      * @param commit the commit.
      */
-    private static void logCommit(Git.Commit commit) {
-        SimpleDateFormat format =
-                new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z");
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("===%n"));
-        sb.append(String.format("commit %s%n", commit._hash));
+    private static void logCommit(PrintWriter out, Git.Commit commit) {
+        out.println("===");
+        out.print("commit ");
+        out.println(commit._hash);
         if (commit._parents.size() > 1) {
-            sb.append("Merge:");
-            for (String parent : commit._parents) {
-                sb.append(" ");
-                sb.append(parent, 0, 7);
+            out.print("Merge:");
+            for (ObjectId parent : commit._parents) {
+                out.print(' ');
+                out.write(parent.toString(), 0, 7);
             }
-            sb.append(String.format("%n"));
+            out.println();
         }
-        sb.append(String.format("Date: %s%n", format.format(commit._date)));
-        sb.append(String.format("%s%n", commit._message));
-
-        System.out.println(sb.toString());
+        out.print("Date: ");
+        out.println(LOG_DATE_FORMAT.format(commit._date.toInstant()));
+        out.println(commit._message);
+        out.println();
     }
 
     /**
@@ -373,56 +642,105 @@ public class Main {
             if (Objects.equals(branch, git._currentBranch)) {
                 throw Utils.error("No need to checkout the current branch.");
             }
-            String sha1 = git._branches.get(branch);
+            ObjectId sha1 = git._branches.get(branch);
             if (sha1 == null) {
                 throw Utils.error("No such branch exists.");
             }
             checkoutCommit(git, sha1);
             git._currentBranch = branch;
         } else if (args.get(0).equals("--")) {
-            File file = new File(args.get(1));
-            Git.Commit commit = git._commits.get(git._headPtr);
-            String fileHash = commit._committed.get(file);
-            byte[] content = git._files.get(fileHash);
-            Utils.writeContents(file, content);
+            File file = workFile(args.get(1));
+            Git.Commit commit = git.commit(git._headPtr);
+            ObjectId fileHash = git.files(commit).get(file);
+            if (fileHash == null) {
+                throw Utils.error("File does not exist in that commit.");
+            }
+            git.writeBlob(fileHash, file);
         } else if (args.get(1).equals("--")) {
             String sha1 = args.get(0);
-            File file = new File(args.get(2));
+            File file = workFile(args.get(2));
             Git.Commit commit = getCommit(git, sha1);
             if (commit == null) {
                 throw Utils.error("No commit with that id exists.");
             }
-            String fileHash = commit._committed.get(file);
+            ObjectId fileHash = git.files(commit).get(file);
             if (fileHash == null) {
                 throw Utils.error("File does not exist in that commit.");
             }
-            byte[] content = git._files.get(fileHash);
-            Utils.writeContents(file, content);
+            git.writeBlob(fileHash, file);
         } else {
             throw Utils.error("Incorrect operands.");
         }
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
+        git.saveIndex();
     }
 
     /**
-     * Checkouts to a commit.
+     * Checkouts to a commit, only touching files whose contents differ.
      * @param git git.
      * @param sha1 commit id.
      */
-    private static void checkoutCommit(Git git, String sha1) {
+    private static void checkoutCommit(Git git, ObjectId sha1) {
         containsUntrackedFiles(git);
-        List<String> files = Utils.plainFilenamesIn(".");
-        for (String file : files) {
-            Utils.restrictedDelete(file);
+        Map<File, ObjectId> committed = git.files(git.commit(sha1));
+        Map<File, ObjectId> current =
+                WorkTree.hashes(git.index(), git._staged.keySet());
+        for (File file : current.keySet()) {
+            if (!committed.containsKey(file)) {
+                delete(git, file);
+            }
         }
-        Git.Commit commit = git._commits.get(sha1);
-        for (Map.Entry<File, String> entry : commit._committed.entrySet()) {
-            byte[] content = git._files.get(entry.getValue());
-            Utils.writeContents(entry.getKey(), content);
+        for (Map.Entry<File, ObjectId> entry : committed.entrySet()) {
+            if (!entry.getValue().equals(current.get(entry.getKey()))) {
+                git.writeBlob(entry.getValue(), entry.getKey());
+            }
         }
         git._headPtr = sha1;
-        git._staged = new HashMap<>(commit._committed);
+        git._staged = new HashMap<>(committed);
+    }
+
+    /**
+     * Deletes a file and, if it is a directory, everything under it.
+     * @param file the file.
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Deletes a working file, along with any directories it leaves empty.
+     * @param git git.
+     * @param file the file.
+     */
+    private static void delete(Git git, File file) {
+        Utils.restrictedDelete(file);
+        git.index().remove(file);
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * A working file named on the command line.
+     * @param name file name, relative to the working directory or
+     *             absolute, which must lie within the working directory.
+     * @return the file, relative to the working directory.
+     */
+    private static File workFile(String name) {
+        Path root = Paths.get("").toAbsolutePath();
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root)) {
+            throw Utils.error("File is outside the repository.");
+        }
+        return root.relativize(path).toFile();
     }
 
     /**
@@ -430,9 +748,8 @@ public class Main {
      * @param git git.
      */
     private static void containsUntrackedFiles(Git git) {
-        List<String> files = Utils.plainFilenamesIn(".");
-        for (String file : files) {
-            if (!git._staged.containsKey(new File(file))) {
+        for (File file : WorkTree.plainFiles()) {
+            if (!git._staged.containsKey(file)) {
                 throw Utils.error("There is an untracked file in the way;"
                         + " delete it or add it first.");
             }
@@ -450,7 +767,7 @@ public class Main {
         }
         git._branches.put(name, git._headPtr);
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
     }
 
     /**
@@ -467,7 +784,7 @@ public class Main {
         }
         git._branches.remove(name);
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
     }
 
     /**
@@ -483,7 +800,8 @@ public class Main {
         checkoutCommit(git, commit._hash);
         git._branches.put(git._currentBranch, commit._hash);
         File gitFile = Utils.join(".gitlet", "git");
-        Utils.writeObject(gitFile, git);
+        git.write(gitFile);
+        git.saveIndex();
     }
 
     /**
@@ -493,19 +811,19 @@ public class Main {
     private static void merge(String other) {
         Git git = checkInitialized();
 
-        Git.Commit head = git._commits.get(git._headPtr);
-        if (!git._staged.keySet().equals(head._committed.keySet())) {
+        Git.Commit head = git.commit(git._headPtr);
+        if (!git._staged.keySet().equals(git.files(head).keySet())) {
             throw Utils.error("You have uncommitted changes.");
         }
         if (Objects.equals(other, git._currentBranch)) {
             throw Utils.error("Cannot merge a branch with itself.");
         }
-        String otherBranch = git._branches.get(other);
+        ObjectId otherBranch = git._branches.get(other);
         if (otherBranch == null) {
             throw Utils.error("A branch with that name does not exist.");
         }
         containsUntrackedFiles(git);
-        String ancestor = ancestorOf(git, git._headPtr, otherBranch);
+        ObjectId ancestor = ancestorOf(git, git._headPtr, otherBranch);
 
         if (ancestor.equals(otherBranch)) {
             System.out.println("Given branch is an "
@@ -516,14 +834,17 @@ public class Main {
             git._branches.put(git._currentBranch, otherBranch);
             checkoutCommit(git, otherBranch);
             File gitFile = Utils.join(".gitlet", "git");
-            Utils.writeObject(gitFile, git);
+            git.write(gitFile);
+            git.saveIndex();
         } else {
             merge(other, git, head, otherBranch, ancestor);
         }
     }
 
     /**
-     * Merge.
+     * Merge.  The change to each file is planned first; then files are
+     * deleted, and the remaining files are written and merged in
+     * parallel.  The staging area is updated afterwards, in file order.
      * @param other other branch.
      * @param git git.
      * @param head head.
@@ -531,265 +852,1323 @@ public class Main {
      * @param ancestor ancestor.
      */
     private static void merge(String other, Git git, Git.Commit head,
-                              String otherBranch, String ancestor) {
-        Git.Commit split = git._commits.get(ancestor);
-        Git.Commit otherHead = git._commits.get(otherBranch);
-        boolean conflict = false, needCommit = false;
-        for (Map.Entry<File, String> entry : split._committed.entrySet()) {
-            File file = entry.getKey();
-            String splitHash = entry.getValue();
-            String headHash = head._committed.get(file);
-            String otherHash = otherHead._committed.get(file);
-            if (Objects.equals(headHash, splitHash) && otherHash != null
-                && !Objects.equals(otherHash, splitHash)) {
-                byte[] content = git._files.get(otherHash);
-                Utils.writeContents(file, content);
-                git._staged.put(file, otherHash);
-                needCommit = true;
-            } else if (Objects.equals(headHash, splitHash)
-                && otherHash == null) {
-                Utils.restrictedDelete(file);
-                git._staged.remove(file);
-                needCommit = true;
-            } else if (!Objects.equals(headHash, splitHash)
-                && !Objects.equals(otherHash, splitHash)
-                && !Objects.equals(otherHash, headHash)) {
-                conflict(git, file, headHash, otherHash);
-                needCommit = true;
-                conflict = true;
-            }
-        }
-        for (Map.Entry<File, String> entry : otherHead._committed.entrySet()) {
-            if (split._committed.containsKey(entry.getKey())) {
-                continue;
+                              ObjectId otherBranch, ObjectId ancestor) {
+        List<FileMerge> plan = planMerge(git.files(git.commit(ancestor)),
+                git.files(head), git.files(git.commit(otherBranch)));
+        if (plan.isEmpty()) {
+            return;
+        }
+        runMerge(git, plan);
+        boolean conflict = false;
+        for (FileMerge action : plan) {
+            if (action._result == null) {
+                git._staged.remove(action._file);
+            } else {
+                git._staged.put(action._file, action._result);
             }
-            File file = entry.getKey();
-            String headHash = head._committed.get(file);
-            String otherHash = otherHead._committed.get(file);
-            if (headHash == null) {
-                byte[] content = git._files.get(otherHash);
-                Utils.writeContents(file, content);
-                git._staged.put(file, otherHash);
-                needCommit = true;
-            } else if (!Objects.equals(headHash, otherHash)) {
-                conflict(git, file, headHash, otherHash);
-                needCommit = true;
-                conflict = true;
-            }
-        }
-        if (needCommit) {
-            String message = String.format("Merged %s into %s.",
-                    other, git._currentBranch);
-            Git.Commit commit = new Git.Commit(message, new Date(),
-                    Arrays.asList(git._headPtr, otherBranch), git._staged);
-            git._headPtr = commit._hash;
-            git._commits.put(commit._hash, commit);
-            File gitFile = Utils.join(".gitlet", "git");
-            Utils.writeObject(gitFile, git);
+            conflict |= action._conflict;
         }
+        String message = String.format("Merged %s into %s.",
+                other, git._currentBranch);
+        Git.Commit commit = new Git.Commit(message, new Date(),
+                Arrays.asList(git._headPtr, otherBranch),
+                git.putTree(head, git._staged));
+        git._headPtr = commit._hash;
+        git.putCommit(commit);
+        File gitFile = Utils.join(".gitlet", "git");
+        git.write(gitFile);
+        git.saveIndex();
         if (conflict) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
     /**
-     * handle conflict.
-     * @param git git.
-     * @param file file.
-     * @param headHash head hash.
-     * @param otherHash other hash.
-     */
-    private static void conflict(Git git, File file,
-                                 String headHash, String otherHash) {
-        byte[] headBytes = git._files.get(headHash);
-        byte[] otherBytes = git._files.get(otherHash);
-        byte[] concat = concat(headBytes, otherBytes);
-        Utils.writeContents(file, concat);
-        String sha1 = Utils.sha1(concat);
-        git._files.put(sha1, concat);
-        git._staged.put(file, sha1);
-    }
-
-    /**
-     * Concat conflict files.
-     * @param head head version.
-     * @param given given version.
-     * @return concat result.
-     */
-    private static byte[] concat(byte[] head, byte[] given) {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-                PrintWriter writer = new PrintWriter(out, true)) {
-            writer.println("<<<<<<< HEAD");
-            if (head != null) {
-                out.write(head);
-            }
-            writer.println("=======");
-            if (given != null) {
-                out.write(given);
-            }
-            writer.println(">>>>>>>");
-            return out.toByteArray();
-        } catch (IOException excp) {
-            throw new IllegalArgumentException(excp.getMessage());
+     * Plan the change a merge makes to each file.
+     * @param split files at the split point.
+     * @param headFiles files of the head.
+     * @param otherFiles files of the other branch.
+     * @return the changes, in file order.
+     */
+    private static List<FileMerge> planMerge(Map<File, ObjectId> split,
+                                             Map<File, ObjectId> headFiles,
+                                             Map<File, ObjectId> otherFiles) {
+        Set<File> files = new TreeSet<>(split.keySet());
+        files.addAll(otherFiles.keySet());
+        List<FileMerge> plan = new ArrayList<>();
+        for (File file : files) {
+            ObjectId splitHash = split.get(file);
+            ObjectId headHash = headFiles.get(file);
+            ObjectId otherHash = otherFiles.get(file);
+            if (Objects.equals(headHash, otherHash)
+                || Objects.equals(otherHash, splitHash)) {
+                continue;
+            }
+            boolean merge = !Objects.equals(headHash, splitHash);
+            plan.add(new FileMerge(file, splitHash, headHash, otherHash,
+                    merge));
         }
+        return plan;
     }
 
     /**
-     * Ancestor of commits.
+     * Carry out the changes planned for a merge.  Deletions come first,
+     * so that no directory is removed while another file is written into
+     * it.  Writes and line merges then run on at most MERGE_THREADS
+     * threads, and only record their results in the plan; the index
+     * is read beforehand, since they share it.
      * @param git git.
-     * @param headPtr head.
-     * @param otherBranch another branch.
-     * @return ancestor.
+     * @param plan the changes.
      */
-    private static String ancestorOf(Git git,
-                                     String headPtr, String otherBranch) {
-        Set<String> ancestors = new HashSet<>();
-        ancestorsOf(git, ancestors, otherBranch);
-
-        List<String> commitIds = new ArrayList<>();
-        commitIds.add(headPtr);
-        do {
-            String sha1 = commitIds.remove(0);
-            if (ancestors.contains(sha1)) {
-                return sha1;
+    private static void runMerge(Git git, List<FileMerge> plan) {
+        git.index();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (FileMerge action : plan) {
+            if (!action._merge && action._other == null) {
+                delete(git, action._file);
             } else {
-                Git.Commit commit = git._commits.get(sha1);
-                commitIds.addAll(commit._parents);
+                tasks.add(() -> {
+                    action.run(git);
+                    return null;
+                });
+            }
+        }
+        int threads = Math.min(tasks.size(), MERGE_THREADS);
+        if (threads == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> task : executor.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Merge interrupted.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
             }
-        } while (commitIds.size() != 0);
-        throw Utils.error("bug.");
+            throw new IllegalArgumentException(excp.getCause());
+        } finally {
+            executor.shutdown();
+        }
     }
 
     /**
-     * Ancestor of commits.
-     * @param git git.
-     * @param ancestors set.
-     * @param current current.
+     * The number of threads writing and merging files during a merge,
+     * from the system property gitlet.mergeThreads, or else the number
+     * of processors.
+     */
+    private static final int MERGE_THREADS = Math.max(1,
+            Integer.getInteger("gitlet.mergeThreads",
+                    Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The change a merge makes to one file: either taking the version of
+     * the other branch, which may be a deletion, or merging the two
+     * versions line by line.
      */
-    private static void ancestorsOf(Git git,
-                                    Set<String> ancestors,
-                                    String current) {
-        ancestors.add(current);
-        Git.Commit commit = git._commits.get(current);
-        if (commit._parents != null && !commit._parents.isEmpty()) {
-            for (String parent : commit._parents) {
-                ancestorsOf(git, ancestors, parent);
+    private static class FileMerge {
+        /**
+         * Create a change.
+         * @param file the file.
+         * @param split the split point version, or null if there is none.
+         * @param head the head version, or null if there is none.
+         * @param other the other version, or null if there is none.
+         * @param merge whether to merge the versions line by line.
+         */
+        FileMerge(File file, ObjectId split, ObjectId head,
+                  ObjectId other, boolean merge) {
+            _file = file;
+            _split = split;
+            _head = head;
+            _other = other;
+            _merge = merge;
+            _result = other;
+        }
+
+        /**
+         * Write the file, and record the version to stage.  Lines changed
+         * in only one branch take that change; lines changed in both are
+         * written as a conflict.  A file deleted in one branch conflicts
+         * as a whole.  Other files may be written at the same time.
+         * @param git git.
+         */
+        void run(Git git) {
+            if (!_merge) {
+                git.writeBlob(_other, _file);
+                return;
+            }
+            byte[] headBytes = git.blob(_head);
+            byte[] otherBytes = git.blob(_other);
+            byte[] merged;
+            if (headBytes == null || otherBytes == null) {
+                merged = Diff.conflict(headBytes, otherBytes);
+                _conflict = true;
+            } else {
+                byte[] splitBytes = git.blob(_split);
+                Diff.Merge merge = Diff.merge(
+                        splitBytes == null ? new byte[0] : splitBytes,
+                        headBytes, otherBytes);
+                merged = merge._contents;
+                _conflict = merge._conflict;
             }
+            Utils.makeParentDirectories(_file);
+            Utils.writeContents(_file, merged);
+            _result = git.putBlob(merged);
+            git.index().record(_file, _result);
         }
+
+        /**
+         * The file.
+         */
+        private final File _file;
+        /**
+         * The versions at the split point, the head and the other
+         * branch, each null if there is none.
+         */
+        private final ObjectId _split, _head, _other;
+        /**
+         * Whether the versions are merged line by line.
+         */
+        private final boolean _merge;
+        /**
+         * The version to stage, or null if the file is deleted.
+         */
+        private ObjectId _result;
+        /**
+         * Whether the merged file has conflicts.
+         */
+        private boolean _conflict;
     }
 
     /**
-     * Get a commit.
-     * @param git git.
-     * @param sha1 hash.
-     * @return commit.
+     * The diff command: shows, as unified diffs, how files changed from
+     * one commit to another, or from a commit (by default the head) to
+     * the tracked files of the working directory.  Two commits are
+     * compared tree by tree, so only the files that changed are read.
+     * Output is written as it is produced.
+     * @param args zero, one or two commit ids.
      */
-    private static Git.Commit getCommit(Git git, String sha1) {
-        if (sha1.length() == Utils.UID_LENGTH) {
-            return git._commits.get(sha1);
+    private static void diff(List<String> args) {
+        Git git = checkInitialized();
+
+        Git.Commit from = args.isEmpty() ? git.commit(git._headPtr)
+                : getCommit(git, args.get(0));
+        Git.Commit to = args.size() < 2 ? null : getCommit(git, args.get(1));
+        if (from == null || args.size() == 2 && to == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        List<Tree.Change> changes;
+        if (to != null) {
+            changes = Tree.diff(git._store, from._tree, to._tree);
         } else {
-            for (Git.Commit commit : git._commits.values()) {
-                if (commit._hash.startsWith(sha1)) {
-                    return commit;
-                }
-            }
+            changes = Tree.diff(new TreeMap<>(git.files(from)),
+                    WorkTree.hashes(git.index(), git._staged.keySet()));
+        }
+        BufferedOutputStream out = new BufferedOutputStream(System.out,
+                1 << 16);
+        for (Tree.Change change : changes) {
+            byte[] after = change._after == null ? null
+                    : to == null ? Utils.readContents(change._file)
+                    : git.blob(change._after);
+            Diff.unified(out, change._file.getPath().replace(
+                    File.separatorChar, '/'), git.blob(change._before),
+                    after);
         }
-        return null;
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        git.saveIndex();
     }
 
     /**
-     * Checks if it's a git-controlled folder.
-     * @return the git instance.
+     * The format of commit dates in blames.
      */
-    private static Git checkInitialized() {
-        File gitlet = new File(".gitlet");
-        if (!gitlet.exists()) {
-            throw Utils.error("Not in an initialized Gitlet directory.");
+    private static final DateTimeFormatter BLAME_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z",
+                    Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+    /**
+     * The blame command: shows each line of a file in the head commit
+     * after the id and date of the commit that last changed it.
+     * @param fileName the file.
+     */
+    private static void blame(String fileName) {
+        Git git = checkInitialized();
+
+        String path = ChangedPaths.path(workFile(fileName));
+        Git.Commit head = git.commit(git._headPtr);
+        ObjectId blob = path.isEmpty() ? null : blobAt(git, head, path);
+        if (blob == null) {
+            throw Utils.error("File does not exist in that commit.");
+        }
+        Blame blame = new Blame(git, path);
+        Diff.Text text = blame.text(blob);
+        ObjectId[] owners = blame.run(head, blob, text);
+        Map<ObjectId, String> labels = new HashMap<>();
+        String format = "%s %" + Integer.toString(owners.length).length()
+                + "d) ";
+        BufferedOutputStream out = new BufferedOutputStream(System.out,
+                1 << 16);
+        try {
+            for (int line = 0; line < owners.length; line += 1) {
+                String label = labels.computeIfAbsent(owners[line],
+                    id -> id.toString().substring(0, 8) + " ("
+                        + BLAME_DATE_FORMAT.format(
+                                git.commit(id)._date.toInstant()));
+                out.write(String.format(format, label, line + 1)
+                        .getBytes(StandardCharsets.UTF_8));
+                text.printLine(out, line);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        return Utils.readObject(Utils.join(gitlet, "git"), Git.class);
     }
 
     /**
-     * A git instance.
+     * The blob of a file in a commit.
+     * @param git git.
+     * @param commit the commit.
+     * @param path the file, with '/' between names.
+     * @return its blob id, or null if the commit has no such file.
      */
-    static class Git implements Serializable {
-        private static final long serialVersionUID = -368466168212979819L;
+    private static ObjectId blobAt(Git git, Git.Commit commit, String path) {
+        ObjectId id = Tree.lookup(git._store, commit._tree, path);
+        return id != null && git._store.type(id) == ObjectStore.BLOB
+            ? id : null;
+    }
 
+    /**
+     * The attribution of the lines of one file to the commits that last
+     * changed them.  Commits are visited newest first, by generation
+     * number, each with the lines of its version of the file that are
+     * still unexplained.  Only versions whose blob differs are compared:
+     * a parent with the same blob takes all of the lines, and the
+     * changed-path filters tell when that is the first parent without
+     * reading either tree.  Otherwise each parent's version is compared
+     * with the commit's and takes the lines matched in it, and the commit
+     * changed the lines left over.  The walk stops once no lines are
+     * left, or short at any commit whose blame of the file is cached.
+     * The result for the first commit is cached in its turn.
+     */
+    private static class Blame {
         /**
-         * The head pointer.
+         * Prepare to blame a file.
+         * @param git git.
+         * @param path the file, with '/' between names.
          */
-        private String _headPtr;
+        Blame(Git git, String path) {
+            _git = git;
+            _path = path;
+            _cache = git.blames();
+        }
 
         /**
-         * The current branch.
+         * Blame the file in a commit.
+         * @param commit the commit.
+         * @param blob the file's blob in the commit.
+         * @param text the blob's lines, from text().
+         * @return the commit that last changed each line.
          */
-        private String _currentBranch;
+        ObjectId[] run(Git.Commit commit, ObjectId blob, Diff.Text text) {
+            ObjectId[] cached = _cache.get(commit._hash, _path, blob);
+            if (cached != null) {
+                return cached;
+            }
+            _owners = new ObjectId[text.size()];
+            Suspect first = suspect(commit, blob, text);
+            for (int line = 0; line < text.size(); line += 1) {
+                first.add(line, line);
+            }
+            enqueue(first);
+            while (!_queue.isEmpty()) {
+                Suspect suspect = _queue.poll();
+                _suspects.remove(suspect._commit._hash);
+                visit(suspect);
+            }
+            _cache.put(commit._hash, _path, blob, _owners);
+            return _owners;
+        }
+
         /**
-         * All commits.
+         * The lines of a blob, numbered alike with those of every other
+         * blob of this blame.
+         * @param blob the blob id.
+         * @return the lines.
          */
-        private Map<String, Commit> _commits;
+        Diff.Text text(ObjectId blob) {
+            return new Diff.Text(_git.blob(blob), _interner);
+        }
+
         /**
-         * All branches.
+         * Pass the lines of a suspect to its parents, and attribute to it
+         * those they do not take.
+         * @param suspect the suspect.
          */
-        private Map<String, String> _branches;
+        private void visit(Suspect suspect) {
+            if (suspect._count == 0) {
+                return;
+            }
+            Git.Commit commit = suspect._commit;
+            ObjectId[] cached = _cache.get(commit._hash, _path,
+                    suspect._blob);
+            if (cached != null) {
+                for (int k = 0; k < suspect._count; k += 1) {
+                    _owners[suspect._finals[k]] = cached[suspect._lines[k]];
+                }
+                return;
+            }
+            int count = commit._parents.size();
+            Git.Commit[] parents = new Git.Commit[count];
+            ObjectId[] blobs = new ObjectId[count];
+            for (int p = 0; p < count; p += 1) {
+                parents[p] = _git.commit(commit._parents.get(p));
+                boolean unchanged = p == 0 && _git.changedPaths().excludes(
+                        _git.graph().position(commit._hash), commit._hash,
+                        _path);
+                blobs[p] = unchanged ? suspect._blob
+                        : blobAt(_git, parents[p], _path);
+                if (suspect._blob.equals(blobs[p])) {
+                    Suspect target = suspect(parents[p], blobs[p],
+                            suspect._text);
+                    for (int k = 0; k < suspect._count; k += 1) {
+                        target.add(suspect._lines[k], suspect._finals[k]);
+                    }
+                    enqueue(target);
+                    return;
+                }
+            }
+            if (suspect._text == null) {
+                suspect._text = text(suspect._blob);
+            }
+            for (int p = 0; p < count && suspect._count > 0; p += 1) {
+                if (blobs[p] == null) {
+                    continue;
+                }
+                Suspect target = suspect(parents[p], blobs[p], null);
+                if (target._text == null) {
+                    target._text = text(blobs[p]);
+                }
+                int[] match = Diff.match(suspect._text.lines(),
+                        target._text.lines());
+                int kept = 0;
+                for (int k = 0; k < suspect._count; k += 1) {
+                    int line = suspect._lines[k];
+                    if (match[line] >= 0) {
+                        target.add(match[line], suspect._finals[k]);
+                    } else {
+                        suspect._lines[kept] = line;
+                        suspect._finals[kept] = suspect._finals[k];
+                        kept += 1;
+                    }
+                }
+                suspect._count = kept;
+                enqueue(target);
+            }
+            for (int k = 0; k < suspect._count; k += 1) {
+                _owners[suspect._finals[k]] = commit._hash;
+            }
+        }
+
         /**
-         * Staged files.
+         * The suspect for a commit: the queued one, or else a new one
+         * with no lines, which is only queued by enqueue() once it has
+         * some.
+         * @param commit the commit.
+         * @param blob the file's blob in the commit.
+         * @param text the blob's lines, or null if not read yet.
+         * @return the suspect.
          */
-        private Map<File, String> _staged;
+        private Suspect suspect(Git.Commit commit, ObjectId blob,
+                                Diff.Text text) {
+            Suspect result = _suspects.get(commit._hash);
+            if (result == null) {
+                result = new Suspect(commit, blob);
+            }
+            if (result._text == null) {
+                result._text = text;
+            }
+            return result;
+        }
+
         /**
-         * All files.
+         * Queue a suspect, unless it has no lines, which leaves nothing
+         * to follow further back, or is queued already.
+         * @param suspect the suspect.
          */
-        private Map<String, byte[]> _files;
+        private void enqueue(Suspect suspect) {
+            if (suspect._count > 0 && _suspects.putIfAbsent(
+                    suspect._commit._hash, suspect) == null) {
+                _queue.add(suspect);
+            }
+        }
 
         /**
-         * A commit.
+         * Git.
+         */
+        private final Git _git;
+        /**
+         * The file, with '/' between names.
+         */
+        private final String _path;
+        /**
+         * Blames already made.
+         */
+        private final BlameCache _cache;
+        /**
+         * The numbering of distinct lines.
+         */
+        private final Map<Diff.Line, Integer> _interner = new HashMap<>();
+        /**
+         * The suspects not yet visited, by commit id.
+         */
+        private final Map<ObjectId, Suspect> _suspects = new HashMap<>();
+        /**
+         * The suspects not yet visited, newest first.
+         */
+        private final PriorityQueue<Suspect> _queue = new PriorityQueue<>(
+                Comparator.comparingInt(suspect ->
+                        -suspect._commit._generation));
+        /**
+         * The commit that last changed each line, where known.
          */
-        static class Commit implements Serializable {
-            private static final long serialVersionUID = 696628061159317343L;
+        private ObjectId[] _owners;
+    }
 
-            /**
-             * Create a commit.
-             * @param message The commit message.
-             * @param date The commit date.
-             */
-            Commit(String message, Date date) {
-                this._message = message;
-                this._date = date;
-                this._parents = new ArrayList<>();
-                this._committed = new HashMap<>();
-                this._hash = Utils.sha1("");
-            }
+    /**
+     * A commit with lines of its version of a blamed file that are yet to
+     * be explained.
+     */
+    private static class Suspect {
+        /**
+         * A suspect with no lines yet.
+         * @param commit the commit.
+         * @param blob the file's blob in the commit.
+         */
+        Suspect(Git.Commit commit, ObjectId blob) {
+            _commit = commit;
+            _blob = blob;
+        }
 
-            /**
-             * Create a commit.
+        /**
+         * Add a line.
+         * @param line its position in this commit's version.
+         * @param finalLine its position in the blamed version.
+         */
+        void add(int line, int finalLine) {
+            if (_count == _lines.length) {
+                _lines = Arrays.copyOf(_lines, 2 * _count + 8);
+                _finals = Arrays.copyOf(_finals, _lines.length);
+            }
+            _lines[_count] = line;
+            _finals[_count] = finalLine;
+            _count += 1;
+        }
+
+        /**
+         * The commit.
+         */
+        private final Git.Commit _commit;
+        /**
+         * The file's blob in the commit.
+         */
+        private final ObjectId _blob;
+        /**
+         * The blob's lines, or null if not read yet.
+         */
+        private Diff.Text _text;
+        /**
+         * The position of each line in this commit's version.
+         */
+        private int[] _lines = new int[0];
+        /**
+         * The position of each line in the blamed version.
+         */
+        private int[] _finals = new int[0];
+        /**
+         * The number of lines.
+         */
+        private int _count;
+    }
+
+    /**
+     * The pack command: moves all loose objects into a new pack,
+     * storing similar objects, such as versions of one file, as deltas
+     * of one another.  Objects over ObjectStore.MAX_PACKED_SIZE (64 MiB)
+     * stay loose and uncompressed, count in neither size reported, and
+     * are reported separately.
+     */
+    private static void pack() {
+        Git git = checkInitialized();
+
+        long before = 0;
+        for (ObjectId id : git._store.packableIds()) {
+            before += git._store.file(id).length();
+        }
+        Map<ObjectId, String> paths = stagedPaths(git);
+        Set<ObjectId> seen = new HashSet<>();
+        for (ObjectId id : git._store.looseIds()) {
+            if (git._store.type(id) == ObjectStore.COMMIT) {
+                Tree.reachable(git._store, git.commit(id)._tree, seen, paths);
+            }
+        }
+        Pack pack = git._store.pack(paths);
+        if (pack == null) {
+            System.out.println("Nothing to pack.");
+        } else {
+            System.out.printf("Packed %d objects: %d bytes -> %d bytes.%n",
+                    pack.size(), before, pack.length());
+        }
+        reportUnpacked(git);
+    }
+
+    /**
+     * The gc command: deletes every object that cannot be reached from a
+     * branch, the head or the staging area, and rebuilds the commit
+     * indices from the commits that remain.  Unreachable objects in packs
+     * are only dropped with --repack, which also gathers all reachable
+     * objects of at most ObjectStore.MAX_PACKED_SIZE (64 MiB) into one
+     * new pack, as the pack command does, and reports the larger ones,
+     * which stay loose.  Without it, the commits in packs are
+     * taken as roots, since they stay in the store, and so stay indexed.
+     * The indices are built afresh beside the ones in use, and only put
+     * in their place once complete (see Git.installIndices).
+     * @param args the arguments, either empty or --repack.
+     */
+    private static void gc(List<String> args) {
+        boolean repack = args.equals(Collections.singletonList("--repack"));
+        if (!repack && !args.isEmpty()) {
+            throw Utils.error("Incorrect operands.");
+        }
+        Git git = checkInitialized();
+        long before = git._store.diskUsage();
+
+        List<ObjectId> roots = new ArrayList<>(git._branches.values());
+        roots.add(git._headPtr);
+        if (!repack) {
+            for (Pack pack : git._store.packs()) {
+                for (int k = 0; k < pack.size(); k += 1) {
+                    if (pack.type(pack.id(k)) == ObjectStore.COMMIT) {
+                        roots.add(pack.id(k));
+                    }
+                }
+            }
+        }
+        Set<ObjectId> reachable = new HashSet<>(git._staged.values());
+        Map<ObjectId, String> paths = stagedPaths(git);
+        List<Git.Commit> commits = new ArrayList<>();
+        while (!roots.isEmpty()) {
+            ObjectId id = roots.remove(roots.size() - 1);
+            if (reachable.add(id)) {
+                Git.Commit commit = git.commit(id);
+                if (commit == null) {
+                    throw Utils.error("Missing commit %s.", id);
+                }
+                commits.add(commit);
+                Tree.reachable(git._store, commit._tree, reachable, paths);
+                roots.addAll(commit._parents);
+            }
+        }
+
+        File built = Utils.join(".gitlet", "indices.tmp");
+        deleteRecursively(built);
+        built.mkdir();
+        commits.sort(Comparator.comparingInt(commit -> commit._generation));
+        for (Git.Commit commit : commits) {
+            git.indexCommit(commit, built);
+        }
+        Utils.moveAtomically(built, Utils.join(".gitlet", "indices"));
+        git.installIndices();
+        git.blames().clear();
+
+        int removed = 0;
+        for (ObjectId id
+                 : repack ? git._store.ids() : git._store.looseIds()) {
+            if (!reachable.contains(id)) {
+                git._store.delete(id);
+                removed += 1;
+            }
+        }
+        if (repack) {
+            git._store.repack(reachable, paths);
+        }
+        long after = git._store.diskUsage();
+        System.out.printf("Removed %d unreachable objects; "
+                + "reclaimed %d bytes (%d -> %d).%n",
+                removed, Math.max(0, before - after), before, after);
+        if (repack) {
+            reportUnpacked(git);
+        }
+    }
+
+    /**
+     * The paths of the staged files.
+     * @param git The repository.
+     * @return the path of each staged blob, with '/' between names.
+     */
+    private static Map<ObjectId, String> stagedPaths(Git git) {
+        Map<ObjectId, String> result = new HashMap<>();
+        for (Map.Entry<File, ObjectId> entry : git._staged.entrySet()) {
+            result.put(entry.getValue(),
+                    entry.getKey().getPath().replace(File.separatorChar, '/'));
+        }
+        return result;
+    }
+
+    /**
+     * Report the loose objects that are too large to pack, if any.
+     * @param git The repository, just packed.
+     */
+    private static void reportUnpacked(Git git) {
+        int loose = git._store.looseIds().size();
+        if (loose > 0) {
+            System.out.printf("Left %d objects over %d MiB loose and "
+                    + "uncompressed.%n",
+                    loose, ObjectStore.MAX_PACKED_SIZE >> 20);
+        }
+    }
+
+    /**
+     * The daemon command: serves the repository to later commands until
+     * stopped with --stop.  Stopping is done by the daemon itself, so
+     * reaching here with --stop means that none is running.
+     * @param args the arguments, either empty or --stop.
+     */
+    private static void daemon(List<String> args) {
+        checkInitialized();
+        if (!args.isEmpty()) {
+            throw Utils.error("No daemon is running.");
+        }
+        Daemon.serve();
+    }
+
+    /**
+     * Keep the caches of each repository opened for the next command,
+     * as a daemon does, or stop doing so.  Either way, caches kept so
+     * far are dropped.
+     * @param keep whether to keep caches.
+     */
+    static void keepWarm(boolean keep) {
+        _keepWarm = keep;
+        _warm = null;
+    }
+
+    /**
+     * Whether the caches of each repository opened are kept.
+     */
+    private static boolean _keepWarm;
+    /**
+     * The repository whose caches were kept, or null.
+     */
+    private static Git _warm;
+
+    /**
+     * Ancestor of commits.
+     * @param git git.
+     * @param headPtr head.
+     * @param otherBranch another branch.
+     * @return ancestor.
+     */
+    private static ObjectId ancestorOf(Git git, ObjectId headPtr,
+                                       ObjectId otherBranch) {
+        ObjectId ancestor = git.graph().mergeBase(headPtr, otherBranch);
+        if (ancestor == null) {
+            throw Utils.error("bug.");
+        }
+        return ancestor;
+    }
+
+    /**
+     * Get a commit.
+     * @param git git.
+     * @param sha1 hash.
+     * @return commit.
+     */
+    private static Git.Commit getCommit(Git git, String sha1) {
+        if (sha1.length() == Utils.UID_LENGTH) {
+            return ObjectId.isValid(sha1)
+                    ? git.commit(ObjectId.parse(sha1)) : null;
+        }
+        List<ObjectId> found = git.graph().withPrefix(sha1);
+        if (found.size() > 1) {
+            throw Utils.error("Ambiguous commit id.");
+        }
+        return found.isEmpty() ? null : git.commit(found.get(0));
+    }
+
+    /**
+     * Checks if it's a git-controlled folder.
+     * @return the git instance.
+     */
+    private static Git checkInitialized() {
+        File gitlet = new File(".gitlet");
+        if (!gitlet.exists()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        Git git = Git.read(Utils.join(gitlet, "git"));
+        if (_warm != null) {
+            git._store = _warm._store;
+            git._blobs = _warm._blobs;
+            git._index = _warm._index;
+            git._graph = _warm._graph;
+            git._changedPaths = _warm._changedPaths;
+        } else {
+            git._store = new ObjectStore(Utils.join(gitlet, "objects"));
+            git._blobs = new BlobCache(git._store);
+        }
+        git.installIndices();
+        if (_keepWarm) {
+            _warm = git;
+        }
+        return git;
+    }
+
+    /**
+     * A git instance.
+     */
+    static class Git {
+
+        /**
+         * The magic number of the file holding the state.
+         */
+        static final int MAGIC = 0x474c4754;
+        /**
+         * The format version of the file holding the state.
+         */
+        static final int VERSION = 1;
+
+        /**
+         * The head pointer.
+         */
+        private ObjectId _headPtr;
+
+        /**
+         * The current branch.
+         */
+        private String _currentBranch;
+        /**
+         * All branches.
+         */
+        private Map<String, ObjectId> _branches;
+        /**
+         * Staged files.
+         */
+        private Map<File, ObjectId> _staged;
+        /**
+         * All blobs and commits, stored outside of this file.
+         */
+        private ObjectStore _store;
+        /**
+         * Recently used blobs, loaded on demand from _store.
+         */
+        private BlobCache _blobs;
+        /**
+         * Cached hashes of working files.
+         */
+        private Index _index;
+        /**
+         * The shape of the history.
+         */
+        private CommitGraph _graph;
+        /**
+         * The changed-path filters of the commits.
+         */
+        private ChangedPaths _changedPaths;
+
+        /**
+         * Read the state stored in a file.
+         * @param file The file.
+         * @return the state.
+         */
+        static Git read(File file) {
+            byte[] bytes = Utils.readContents(file);
+            if (Codec.isSerialized(bytes)) {
+                return upgrade(Upgrade.read(bytes), file);
+            }
+            Codec.Decoder in = new Codec.Decoder(bytes, MAGIC, VERSION);
+            Git git = new Git();
+            git._headPtr = in.id();
+            git._currentBranch = in.string();
+            git._branches = new TreeMap<>();
+            for (long n = in.varint(); n > 0; n -= 1) {
+                git._branches.put(in.string(), in.id());
+            }
+            git._staged = new HashMap<>();
+            for (File path : in.paths()) {
+                git._staged.put(path, in.id());
+            }
+            return git;
+        }
+
+        /**
+         * Converts a repository in the original format: stores its blobs
+         * and commits, under their original ids, indexes the commits and
+         * replaces the state file.  The indices are cleared first, so
+         * that an upgrade interrupted before the state file is replaced
+         * can simply be run again.
+         * @param old The repository.
+         * @param file The file holding the state.
+         * @return the state.
+         */
+        private static Git upgrade(Upgrade.Git old, File file) {
+            Git git = new Git();
+            git._store = new ObjectStore(Utils.join(".gitlet", "objects"));
+            git._blobs = new BlobCache(git._store);
+            git.clearIndices();
+            for (Map.Entry<String, byte[]> blob : old._files.entrySet()) {
+                git._store.put(ObjectId.parse(blob.getKey()),
+                        ObjectStore.BLOB, blob.getValue());
+            }
+
+            Map<String, Commit> converted = new HashMap<>();
+            List<String> pending = new ArrayList<>(old._commits.keySet());
+            while (!pending.isEmpty()) {
+                String id = pending.get(pending.size() - 1);
+                Upgrade.Commit original = old._commits.get(id);
+                if (converted.containsKey(id)) {
+                    pending.remove(pending.size() - 1);
+                    continue;
+                }
+                List<String> unconverted = new ArrayList<>();
+                for (String parent : original._parents) {
+                    if (!converted.containsKey(parent)) {
+                        unconverted.add(parent);
+                    }
+                }
+                if (!unconverted.isEmpty()) {
+                    pending.addAll(unconverted);
+                    continue;
+                }
+                pending.remove(pending.size() - 1);
+                List<ObjectId> parents = new ArrayList<>();
+                int generation = 1;
+                for (String parent : original._parents) {
+                    parents.add(ObjectId.parse(parent));
+                    generation = Math.max(generation,
+                            converted.get(parent)._generation + 1);
+                }
+                Commit commit = new Commit(ObjectId.parse(id),
+                        original._message, original._date, parents,
+                        git.putTree(upgrade(original._committed)),
+                        generation);
+                git._store.put(commit._hash, ObjectStore.COMMIT,
+                        commit.encode());
+                git.indexCommit(commit);
+                converted.put(id, commit);
+            }
+
+            git._headPtr = ObjectId.parse(old._headPtr);
+            git._currentBranch = old._currentBranch;
+            git._branches = new TreeMap<>();
+            for (Map.Entry<String, String> branch
+                     : old._branches.entrySet()) {
+                git._branches.put(branch.getKey(),
+                        ObjectId.parse(branch.getValue()));
+            }
+            git._staged = upgrade(old._staged);
+            git.write(file);
+            return git;
+        }
+
+        /**
+         * Converts files and their blob ids from the original format.
+         * @param files The files, with ids in hexadecimal.
+         * @return the files, with normalized paths.
+         */
+        private static Map<File, ObjectId> upgrade(Map<File, String> files) {
+            Map<File, ObjectId> result = new HashMap<>();
+            for (Map.Entry<File, String> entry : files.entrySet()) {
+                result.put(entry.getKey().toPath().normalize().toFile(),
+                        ObjectId.parse(entry.getValue()));
+            }
+            return result;
+        }
+
+        /**
+         * Write this state to a file, replacing it atomically.
+         * @param file The file.
+         */
+        void write(File file) {
+            Codec.Encoder out = new Codec.Encoder(MAGIC, VERSION);
+            out.id(_headPtr).string(_currentBranch);
+            out.varint(_branches.size());
+            for (Map.Entry<String, ObjectId> branch
+                     : _branches.entrySet()) {
+                out.string(branch.getKey()).id(branch.getValue());
+            }
+            List<File> staged =
+                    new ArrayList<>(new TreeSet<>(_staged.keySet()));
+            out.paths(staged);
+            for (File path : staged) {
+                out.id(_staged.get(path));
+            }
+            Utils.writeAtomically(file, out.toByteArray());
+        }
+
+        /**
+         * Get a commit.
+         * @param hash commit id.
+         * @return the commit, or null if there is none.
+         */
+        Commit commit(ObjectId hash) {
+            byte[] payload = _store.get(hash, ObjectStore.COMMIT);
+            return payload == null ? null : Commit.decode(hash, payload);
+        }
+
+        /**
+         * Stores a commit.
+         * @param commit the commit.
+         */
+        void putCommit(Commit commit) {
+            if (_store.contains(commit._hash)) {
+                return;
+            }
+            commit._generation = 1;
+            for (ObjectId parent : commit._parents) {
+                commit._generation = Math.max(commit._generation,
+                        commit(parent)._generation + 1);
+            }
+            _store.put(commit._hash, ObjectStore.COMMIT, commit.encode());
+            indexCommit(commit);
+        }
+
+        /**
+         * Record a stored commit in the commit graph, its changed-path
+         * filter, the message index and the date index.  Its parents must
+         * already be recorded.
+         * @param commit The commit.
+         */
+        void indexCommit(Commit commit) {
+            indexCommit(commit, new File(".gitlet"));
+        }
+
+        /**
+         * Record a stored commit in the indices kept in a directory.  Its
+         * parents must already be recorded there.
+         * @param commit The commit.
+         * @param dir The directory.
+         */
+        void indexCommit(Commit commit, File dir) {
+            int pos = CommitGraph.append(new File(dir, "commit-graph"),
+                    commit._hash, commit._generation, commit._parents);
+            _graph = null;
+            ObjectId parentTree = commit._parents.isEmpty() ? null
+                    : commit(commit._parents.get(0))._tree;
+            ChangedPaths.write(new File(dir, "changed-paths"), pos,
+                    commit._hash, ChangedPaths.paths(
+                            Tree.diff(_store, parentTree, commit._tree)));
+            _changedPaths = null;
+            new MessageIndex(dir).add(commit._hash, commit._message);
+            new DateIndex(new File(dir, "dates")).add(commit._hash,
+                    commit._date.getTime());
+        }
+
+        /**
+         * Put in place the indices that gc finished building in
+         * .gitlet/indices, if there are any.  Each file there replaces
+         * the index of the same name by an atomic rename.  A directory
+         * of buckets cannot be renamed over, so the old one is deleted
+         * first.  A gc stopped part way through leaves the rest to the
+         * next command.
+         */
+        void installIndices() {
+            File built = Utils.join(".gitlet", "indices");
+            String[] names = built.list();
+            if (names == null) {
+                return;
+            }
+            for (String name : names) {
+                File replacement = new File(built, name);
+                File index = Utils.join(".gitlet", name);
+                if (replacement.isDirectory()) {
+                    deleteRecursively(index);
+                }
+                Utils.moveAtomically(replacement, index);
+            }
+            built.delete();
+            _graph = null;
+            _changedPaths = null;
+        }
+
+        /**
+         * Removes the commit graph, the changed-path filters, the message
+         * and date indices and the cache of blames.
+         */
+        void clearIndices() {
+            Utils.join(".gitlet", "commit-graph").delete();
+            Utils.join(".gitlet", "changed-paths").delete();
+            Utils.join(".gitlet", "dates").delete();
+            messages().clear();
+            blames().clear();
+            _graph = null;
+            _changedPaths = null;
+        }
+
+        /**
+         * The index of commits by date.
+         * @return the date index.
+         */
+        DateIndex dates() {
+            return new DateIndex(Utils.join(".gitlet", "dates"));
+        }
+
+        /**
+         * The index of commit messages.
+         * @return the message index.
+         */
+        MessageIndex messages() {
+            return new MessageIndex(new File(".gitlet"));
+        }
+
+        /**
+         * The cache of blames.
+         * @return the cache.
+         */
+        BlameCache blames() {
+            return new BlameCache(Utils.join(".gitlet", "blame"));
+        }
+
+        /**
+         * The changed-path filters of the commits, read on first use.
+         * @return the filters.
+         */
+        ChangedPaths changedPaths() {
+            if (_changedPaths == null) {
+                _changedPaths = new ChangedPaths(
+                        Utils.join(".gitlet", "changed-paths"));
+            }
+            return _changedPaths;
+        }
+
+        /**
+         * The commit graph, read on first use.
+         * @return the commit graph.
+         */
+        CommitGraph graph() {
+            if (_graph == null) {
+                _graph = CommitGraph.read(
+                        Utils.join(".gitlet", "commit-graph"));
+            }
+            return _graph;
+        }
+
+        /**
+         * Get the contents of a file.
+         * @param hash blob id.
+         * @return the contents, or null if there is none.
+         */
+        byte[] blob(ObjectId hash) {
+            return _blobs.get(hash);
+        }
+
+        /**
+         * The stat cache of working files, read on first use.
+         * @return the index.
+         */
+        Index index() {
+            if (_index == null) {
+                _index = Index.read(Utils.join(".gitlet", "index"));
+            }
+            return _index;
+        }
+
+        /**
+         * Saves the index, if it was used.
+         */
+        void saveIndex() {
+            if (_index != null) {
+                _index.write(Utils.join(".gitlet", "index"));
+            }
+        }
+
+        /**
+         * Stores the contents of a file, streaming them from disk.
+         * @param file the file.
+         * @return the blob id.
+         */
+        ObjectId putBlob(File file) {
+            return _store.putFile(file);
+        }
+
+        /**
+         * Writes the contents of a blob to a file, streaming them from
+         * the store.
+         * @param hash blob id.
+         * @param file the file.
+         */
+        void writeBlob(ObjectId hash, File file) {
+            Utils.makeParentDirectories(file);
+            _store.copyTo(hash, file);
+            index().record(file, hash);
+        }
+
+        /**
+         * The files of a commit, read from its tree on first use.
+         * @param commit the commit.
+         * @return the committed files.
+         */
+        Map<File, ObjectId> files(Commit commit) {
+            if (commit._committed == null) {
+                commit._committed = Tree.files(_store, commit._tree);
+            }
+            return commit._committed;
+        }
+
+        /**
+         * Stores the trees describing some files.
+         * @param files the files.
+         * @return the id of the root tree.
+         */
+        ObjectId putTree(Map<File, ObjectId> files) {
+            return Tree.write(_store, files);
+        }
+
+        /**
+         * Stores the trees describing some files, starting from the tree
+         * of a commit, so that only the directories on the paths of
+         * files that differ from the commit's are written.
+         * @param parent the commit.
+         * @param files the files.
+         * @return the id of the root tree.
+         */
+        ObjectId putTree(Commit parent, Map<File, ObjectId> files) {
+            Map<File, ObjectId> committed = files(parent);
+            Map<File, ObjectId> changes = new HashMap<>();
+            for (Map.Entry<File, ObjectId> entry : files.entrySet()) {
+                if (!entry.getValue().equals(committed.get(entry.getKey()))) {
+                    changes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (File file : committed.keySet()) {
+                if (!files.containsKey(file)) {
+                    changes.put(file, null);
+                }
+            }
+            return Tree.write(_store, parent._tree, changes);
+        }
+
+        /**
+         * Stores the contents of a file.
+         * @param content the contents.
+         * @return the blob id.
+         */
+        ObjectId putBlob(byte[] content) {
+            ObjectId sha1 = ObjectId.hash(content);
+            _store.put(sha1, ObjectStore.BLOB, content);
+            _blobs.put(sha1, content);
+            return sha1;
+        }
+
+        /**
+         * A commit.
+         */
+        static class Commit {
+
+            /**
+             * The magic number of an encoded commit.
+             */
+            static final int MAGIC = 0x474c434d;
+            /**
+             * The format version of an encoded commit.
+             */
+            static final int VERSION = 1;
+
+            /**
+             * Create a commit.
+             * @param message The commit message.
+             * @param date The commit date.
+             */
+            Commit(String message, Date date) {
+                this(message, date, new ArrayList<>(), Tree.EMPTY);
+            }
+
+            /**
+             * Create a commit.
              * @param message The commit message.
              * @param date The commit date.
              * @param parents The parent commit.
-             * @param committed The committed files.
+             * @param tree The id of the tree of committed files.
              */
             Commit(String message, Date date,
-                   List<String> parents, Map<File, String> committed) {
+                   List<ObjectId> parents, ObjectId tree) {
                 this._message = message;
                 this._date = date;
-                this._committed = new HashMap<>(committed);
+                this._tree = tree;
                 this._parents = parents;
-                String hash = Utils.sha1(committed.values());
-                List<String> list = new ArrayList<>();
-                for (File file : committed.keySet()) {
-                    String s = file.toString();
-                    list.add(s);
+                this._hash = ObjectId.hash(identity().toByteArray());
+            }
+
+            /**
+             * Create a commit already stored, whose id is known.
+             * @param hash The commit id.
+             * @param message The commit message.
+             * @param date The commit date.
+             * @param parents The parent commit.
+             * @param tree The id of the tree of committed files.
+             * @param generation The generation number.
+             */
+            private Commit(ObjectId hash, String message, Date date,
+                           List<ObjectId> parents, ObjectId tree,
+                           int generation) {
+                this._hash = hash;
+                this._message = message;
+                this._date = date;
+                this._tree = tree;
+                this._parents = parents;
+                this._generation = generation;
+            }
+
+            /**
+             * Encode this commit.
+             * @return the encoding.
+             */
+            byte[] encode() {
+                return identity().varint(_generation).toByteArray();
+            }
+
+            /**
+             * Start encoding this commit with the fields that make up its
+             * id: everything but the generation number, which follows.
+             * @return the encoder.
+             */
+            private Codec.Encoder identity() {
+                Codec.Encoder out = new Codec.Encoder(MAGIC, VERSION);
+                out.string(_message).signed(_date.getTime()).id(_tree)
+                        .varint(_parents.size());
+                for (ObjectId parent : _parents) {
+                    out.id(parent);
                 }
-                hash = Utils.sha1(hash, Utils.sha1(list));
-                for (String parent : parents) {
-                    hash = Utils.sha1(hash, parent);
+                return out;
+            }
+
+            /**
+             * Decode a commit.
+             * @param hash The commit id, under which it is stored.
+             * @param bytes The encoding, as produced by encode().
+             * @return the commit.
+             */
+            static Commit decode(ObjectId hash, byte[] bytes) {
+                Codec.Decoder in = new Codec.Decoder(bytes, MAGIC, VERSION);
+                String message = in.string();
+                Date date = new Date(in.signed());
+                ObjectId tree = in.id();
+                List<ObjectId> parents = new ArrayList<>();
+                for (long n = in.varint(); n > 0; n -= 1) {
+                    parents.add(in.id());
                 }
-                this._hash = hash;
+                return new Commit(hash, message, date, parents, tree,
+                        (int) in.varint());
             }
 
             /**
              * The commit hash.
              */
-            private String _hash;
+            private ObjectId _hash;
             /**
              * The commit message.
              */
@@ -801,11 +2180,20 @@ public class Main {
             /**
              * The parent commits.
              */
-            private List<String> _parents;
+            private List<ObjectId> _parents;
+            /**
+             * The id of the tree of committed files.
+             */
+            private ObjectId _tree;
+            /**
+             * The generation number: 1 for a root commit, otherwise one
+             * more than the largest generation number of the parents.
+             */
+            private int _generation;
             /**
-             * Committed files.
+             * Committed files, read from _tree on first use.
              */
-            private Map<File, String> _committed;
+            private Map<File, ObjectId> _committed;
         }
 
     }
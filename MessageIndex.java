@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** An on-disk index from commit messages to the commits that have them,
+ *  so that find need not read every commit.  It is made of two sets of
+ *  256 buckets:
+ *  <ul>
+ *  <li> messages/XX holds, for each commit, a record of the raw SHA-1
+ *       hash of its message followed by its raw id, in the bucket named
+ *       by the first byte of the message hash, and
+ *  <li> grams/XX holds, for each distinct trigram (three consecutive
+ *       characters) of each message, a record of the trigram's 32-bit
+ *       key followed by the raw id of the commit, in the bucket named by
+ *       the key's top byte.
+ *  </ul>
+ *  Each bucket is a file XX.sorted of records sorted by key, in the order
+ *  they were added among equal keys, and a short append-only log XX of
+ *  the records added since.  When the log reaches LOG_RECORDS records it
+ *  is merged into XX.sorted, which is replaced atomically, and deleted.
+ *  A crash between the two leaves records in both, so lookups ignore
+ *  repeated commits.  A lookup binary searches XX.sorted for the run of
+ *  records with its key and scans the log, so its cost grows with the
+ *  number of matches rather than with the size of the bucket.  An exact
+ *  lookup reads one messages bucket.  A substring lookup reads the grams
+ *  bucket of each trigram of the text and intersects the commits found
+ *  there.
+ *  @author Jianing Yu
+ */
+class MessageIndex {
+
+    /** The length of the substrings indexed for substring search. */
+    static final int GRAM_LENGTH = 3;
+    /** The number of records in the log of a bucket at which it is
+     *  merged into the sorted records. */
+    static final int LOG_RECORDS = 1024;
+    /** The size of the key of a record of a messages bucket. */
+    private static final int MESSAGE_KEY_SIZE = ObjectId.SIZE;
+    /** The size of the key of a record of a grams bucket. */
+    private static final int GRAM_KEY_SIZE = Integer.BYTES;
+
+    /** An index stored under the directory DIR. */
+    MessageIndex(File dir) {
+        _messages = new File(dir, "messages");
+        _grams = new File(dir, "grams");
+    }
+
+    /** Records that commit ID has message MESSAGE.  The records are not
+     *  forced to disk: after a crash, gc rebuilds the index. */
+    void add(ObjectId id, String message) {
+        byte[] rawId = id.toBytes();
+        byte[] hash = hash(message);
+        append(_messages, hash[0], ByteBuffer.allocate(
+                   MESSAGE_KEY_SIZE + ObjectId.SIZE)
+               .put(hash).put(rawId).array());
+        Map<Byte, ByteBuffer> buckets = new TreeMap<>();
+        Set<Integer> keys = gramKeys(message);
+        for (int key : keys) {
+            buckets.computeIfAbsent((byte) (key >>> 24), b ->
+                ByteBuffer.allocate(keys.size()
+                                    * (GRAM_KEY_SIZE + ObjectId.SIZE)))
+                .putInt(key).put(rawId);
+        }
+        for (Map.Entry<Byte, ByteBuffer> bucket : buckets.entrySet()) {
+            ByteBuffer records = bucket.getValue();
+            append(_grams, bucket.getKey(),
+                   Arrays.copyOf(records.array(), records.position()));
+        }
+    }
+
+    /** Returns the raw SHA-1 hash of the UTF-8 bytes of MESSAGE. */
+    private static byte[] hash(String message) {
+        return Utils.sha1Digest().digest(
+            message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Removes all records from this index. */
+    void clear() {
+        for (File dir : new File[] { _messages, _grams }) {
+            File[] buckets = dir.listFiles();
+            if (buckets != null) {
+                for (File bucket : buckets) {
+                    bucket.delete();
+                }
+            }
+        }
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE, in
+     *  the order they were added. */
+    List<ObjectId> exact(String message) {
+        byte[] hash = hash(message);
+        return new ArrayList<>(find(_messages, hash[0], hash));
+    }
+
+    /** Returns the ids of all commits whose message might contain TEXT,
+     *  in the order they were added, or null if TEXT is shorter than
+     *  GRAM_LENGTH and so cannot be looked up.  Every commit whose
+     *  message does contain TEXT is included, but the result may include
+     *  others, so callers must check the messages themselves. */
+    List<ObjectId> containing(String text) {
+        Set<Integer> keys = gramKeys(text);
+        if (keys.isEmpty()) {
+            return null;
+        }
+        Set<ObjectId> result = null;
+        for (int key : keys) {
+            Set<ObjectId> found = find(_grams, (byte) (key >>> 24),
+                                       ByteBuffer.allocate(GRAM_KEY_SIZE)
+                                       .putInt(key).array());
+            if (result != null) {
+                found.retainAll(result);
+            }
+            result = found;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the keys of the distinct trigrams of TEXT. */
+    private static Set<Integer> gramKeys(String text) {
+        Set<Integer> keys = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i += 1) {
+            keys.add(text.substring(i, i + GRAM_LENGTH).hashCode()
+                     * 0x9e3779b9);
+        }
+        return keys;
+    }
+
+    /** Returns the ids of the records of bucket BUCKET of DIR whose key is
+     *  KEY, without repeats, in the order they were added. */
+    private static Set<ObjectId> find(File dir, byte bucket, byte[] key) {
+        int size = key.length + ObjectId.SIZE;
+        Set<ObjectId> result = new LinkedHashSet<>();
+        byte[] record = new byte[size];
+        File file = bucket(dir, bucket);
+        try {
+            File sorted = sorted(file);
+            if (sorted.isFile()) {
+                try (RandomAccessFile in = new RandomAccessFile(sorted, "r")) {
+                    long count = in.length() / size;
+                    long lo = 0, hi = count;
+                    while (lo < hi) {
+                        long mid = (lo + hi) >>> 1;
+                        in.seek(mid * size);
+                        in.readFully(record, 0, key.length);
+                        if (Arrays.compareUnsigned(record, 0, key.length,
+                                                   key, 0, key.length) < 0) {
+                            lo = mid + 1;
+                        } else {
+                            hi = mid;
+                        }
+                    }
+                    in.seek(lo * size);
+                    DataInputStream records = records(
+                        Channels.newInputStream(in.getChannel()));
+                    for (; lo < count; lo += 1) {
+                        records.readFully(record);
+                        if (!hasKey(record, key)) {
+                            break;
+                        }
+                        result.add(ObjectId.fromBytes(
+                            Arrays.copyOfRange(record, key.length, size)));
+                    }
+                }
+            }
+            for (byte[] logged : log(file, size)) {
+                if (hasKey(logged, key)) {
+                    result.add(ObjectId.fromBytes(
+                        Arrays.copyOfRange(logged, key.length, size)));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns true iff RECORD begins with KEY. */
+    private static boolean hasKey(byte[] record, byte[] key) {
+        return Arrays.equals(record, 0, key.length, key, 0, key.length);
+    }
+
+    /** Appends RECORDS to the log of bucket BUCKET of DIR, and merges the
+     *  log into the sorted records of the bucket once it holds
+     *  LOG_RECORDS records. */
+    private void append(File dir, byte bucket, byte[] records) {
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw Utils.error("Unable to create directory");
+        }
+        int size = keySize(dir) + ObjectId.SIZE;
+        File file = bucket(dir, bucket);
+        Utils.appendRecords(file, size, records, false);
+        if (file.length() >= (long) LOG_RECORDS * size) {
+            merge(file, keySize(dir));
+        }
+    }
+
+    /** Merges the log FILE of a bucket whose records have keys of
+     *  KEYSIZE bytes into the bucket's sorted records, and deletes the
+     *  log.  The sorted records are replaced atomically, so a crash
+     *  leaves either the old ones or the merged ones. */
+    private static void merge(File file, int keySize) {
+        int size = keySize + ObjectId.SIZE;
+        Comparator<byte[]> byKey = (a, b) ->
+            Arrays.compareUnsigned(a, 0, keySize, b, 0, keySize);
+        List<byte[]> added = log(file, size);
+        added.sort(byKey);
+        File sorted = sorted(file);
+        long count = sorted.isFile() ? sorted.length() / size : 0;
+        ByteBuffer merged = ByteBuffer.allocate(
+            (int) ((count + added.size()) * size));
+        int next = 0;
+        if (count > 0) {
+            byte[] record = new byte[size];
+            try (DataInputStream in = records(
+                     new FileInputStream(sorted))) {
+                for (long k = 0; k < count; k += 1) {
+                    in.readFully(record);
+                    while (next < added.size()
+                           && byKey.compare(added.get(next), record) < 0) {
+                        merged.put(added.get(next));
+                        next += 1;
+                    }
+                    merged.put(record);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (; next < added.size(); next += 1) {
+            merged.put(added.get(next));
+        }
+        Utils.writeAtomically(sorted, merged.array());
+        file.delete();
+    }
+
+    /** Returns the whole records of RECORDSIZE bytes in the log FILE of a
+     *  bucket, in the order they were added.  Any partial record left at
+     *  the end by an interrupted append is ignored. */
+    private static List<byte[]> log(File file, int recordSize) {
+        List<byte[]> result = new ArrayList<>();
+        if (!file.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = records(
+                 new FileInputStream(file))) {
+            while (true) {
+                byte[] record = new byte[recordSize];
+                in.readFully(record);
+                result.add(record);
+            }
+        } catch (EOFException excp) {
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a buffered stream of the records in IN. */
+    private static DataInputStream records(InputStream in) {
+        return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /** Returns the size of the keys of the records in the buckets of
+     *  DIR. */
+    private int keySize(File dir) {
+        return dir == _messages ? MESSAGE_KEY_SIZE : GRAM_KEY_SIZE;
+    }
+
+    /** Returns the file of the sorted records of the bucket whose log is
+     *  FILE. */
+    private static File sorted(File file) {
+        return new File(file.getPath() + ".sorted");
+    }
+
+    /** Returns the log file of bucket BUCKET of DIR. */
+    private static File bucket(File dir, byte bucket) {
+        return new File(dir, Utils.hex(new byte[] { bucket }));
+    }
+
+    /** The directory of buckets of message hashes. */
+    private final File _messages;
+    /** The directory of buckets of trigram keys. */
+    private final File _grams;
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/** The id of an object: the 20-byte SHA-1 hash of its contents.  An id
+ *  is held as five ints rather than as 40 hexadecimal digits, so it
+ *  takes a fixed and small amount of memory and is compared and hashed
+ *  without looking at characters.  Ids are converted to and from
+ *  hexadecimal only where they are shown to or read from the user.  Ids
+ *  are ordered as sequences of unsigned bytes, which is also the order
+ *  of their hexadecimal forms.
+ *  @author Jianing Yu
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** The size of an id in bytes. */
+    static final int SIZE = 20;
+    /** The number of ints in an id. */
+    static final int WORDS = SIZE / Integer.BYTES;
+
+    /** The id whose ints, most significant first, are W0 to W4. */
+    ObjectId(int w0, int w1, int w2, int w3, int w4) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+        _w3 = w3;
+        _w4 = w4;
+    }
+
+    /** Returns true iff HEX is an id written as 40 lower-case hexadecimal
+     *  digits. */
+    static boolean isValid(String hex) {
+        if (hex == null || hex.length() != 2 * SIZE) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i += 1) {
+            char c = hex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the id written as the 40 hexadecimal digits HEX.  Throws
+     *  IllegalArgumentException if HEX is not a valid id. */
+    static ObjectId parse(String hex) {
+        if (!isValid(hex)) {
+            throw new IllegalArgumentException("invalid object id: " + hex);
+        }
+        int[] words = new int[WORDS];
+        for (int i = 0; i < WORDS; i += 1) {
+            words[i] = Integer.parseUnsignedInt(
+                hex.substring(8 * i, 8 * i + 8), 16);
+        }
+        return new ObjectId(words[0], words[1], words[2], words[3],
+                            words[4]);
+    }
+
+    /** Returns the id whose raw bytes are the SIZE bytes of BYTES
+     *  starting at OFF. */
+    static ObjectId fromBytes(byte[] bytes, int off) {
+        return read(ByteBuffer.wrap(bytes, off, SIZE));
+    }
+
+    /** Returns the id whose raw bytes are BYTES. */
+    static ObjectId fromBytes(byte[] bytes) {
+        return fromBytes(bytes, 0);
+    }
+
+    /** Returns the id in the next SIZE bytes of BUFFER, advancing past
+     *  them. */
+    static ObjectId read(ByteBuffer buffer) {
+        return new ObjectId(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                            buffer.getInt(), buffer.getInt());
+    }
+
+    /** Returns the id of the concatenation of VALS: their SHA-1 hash. */
+    static ObjectId hash(byte[]... vals) {
+        MessageDigest md = Utils.sha1Digest();
+        for (byte[] val : vals) {
+            md.update(val);
+        }
+        return fromBytes(md.digest());
+    }
+
+    /** Returns the id of the contents of FILE, which must be a normal
+     *  file. */
+    static ObjectId hash(File file) {
+        return fromBytes(Utils.digestOf(file));
+    }
+
+    /** Returns int K of this id, counting from the most significant. */
+    int word(int k) {
+        switch (k) {
+        case 0:
+            return _w0;
+        case 1:
+            return _w1;
+        case 2:
+            return _w2;
+        case 3:
+            return _w3;
+        case 4:
+            return _w4;
+        default:
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Returns the first byte of this id, from 0 to 255. */
+    int firstByte() {
+        return _w0 >>> 24;
+    }
+
+    /** Writes the raw bytes of this id to BUFFER. */
+    void write(ByteBuffer buffer) {
+        buffer.putInt(_w0).putInt(_w1).putInt(_w2).putInt(_w3).putInt(_w4);
+    }
+
+    /** Returns the raw bytes of this id. */
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        write(buffer);
+        return buffer.array();
+    }
+
+    /** Returns true iff the hexadecimal form of this id starts with
+     *  PREFIX. */
+    boolean startsWith(String prefix) {
+        return toString().startsWith(prefix);
+    }
+
+    /** Returns the 40 lower-case hexadecimal digits of this id. */
+    @Override
+    public String toString() {
+        return Utils.hex(toBytes());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2
+            && _w3 == other._w3 && _w4 == other._w4;
+    }
+
+    /** Returns a hash code for this id.  The bits of a SHA-1 hash are
+     *  already evenly distributed, so any of them will do. */
+    @Override
+    public int hashCode() {
+        return _w1;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        for (int k = 0; k < WORDS; k += 1) {
+            int cmp = Integer.compareUnsigned(word(k), other.word(k));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** The ints of this id, most significant first. */
+    private final int _w0, _w1, _w2, _w3, _w4;
+}
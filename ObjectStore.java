@@ -0,0 +1,337 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/** A content-addressed store of objects.  A new (loose) object lives in
+ *  its own file DIR/XX/YYYY..., where XXYYYY... is its SHA-1 id, and
+ *  holds a one-byte type tag followed by the object's payload.  Object
+ *  files are written under temporary names, forced to disk and then
+ *  renamed, so an object that exists is always complete.  The pack
+ *  method gathers loose objects into a Pack in DIR/pack, and objects are
+ *  read from there when they are not loose.  Objects are immutable, so
+ *  adding one that already exists is a no-op.
+ *  @author Jianing Yu
+ */
+class ObjectStore {
+
+    /** Type tag of a blob (file contents). */
+    static final byte BLOB = 1;
+    /** Type tag of an encoded commit. */
+    static final byte COMMIT = 2;
+    /** Type tag of an encoded Tree. */
+    static final byte TREE = 3;
+    /** Loose objects larger than this many bytes are left out of packs,
+     *  which hold each object in memory as it is written. */
+    static final long MAX_PACKED_SIZE = 64L << 20;
+
+    /** A store rooted at DIR, which is created if needed. */
+    ObjectStore(File dir) {
+        _dir = dir;
+        if (!_dir.isDirectory() && !_dir.mkdirs()) {
+            throw Utils.error("Unable to create directory");
+        }
+    }
+
+    /** Returns true iff an object with id ID is stored. */
+    boolean contains(ObjectId id) {
+        return file(id).isFile() || pack(id) != null;
+    }
+
+    /** Stores PAYLOAD of type TYPE under ID, unless already present. */
+    void put(ObjectId id, byte type, byte[] payload) {
+        File file = file(id);
+        if (contains(id)) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw Utils.error("Unable to create directory");
+        }
+        byte[] contents = new byte[payload.length + 1];
+        contents[0] = type;
+        System.arraycopy(payload, 0, contents, 1, payload.length);
+        Utils.writeAtomically(file, contents);
+    }
+
+    /** Stores the contents of FILE as a blob and returns its id, the SHA-1
+     *  hash of those contents.  The file is hashed and copied in chunks of
+     *  Utils.CHUNK_SIZE bytes, so it may be arbitrarily large. */
+    ObjectId putFile(File file) {
+        Path temp = null;
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            temp = _dir.toPath().resolve(".tmp-" + UUID.randomUUID());
+            MessageDigest md = Utils.sha1Digest();
+            try (FileChannel out = FileChannel.open(
+                     temp, StandardOpenOption.CREATE_NEW,
+                     StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.wrap(new byte[] { BLOB }));
+                ByteBuffer buffer = ByteBuffer.allocate(Utils.CHUNK_SIZE);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                out.force(true);
+            }
+            ObjectId id = ObjectId.fromBytes(md.digest());
+            File target = file(id);
+            if (contains(id)) {
+                Files.delete(temp);
+            } else {
+                File parent = target.getParentFile();
+                if (!parent.mkdirs() && !parent.isDirectory()) {
+                    throw Utils.error("Unable to create directory");
+                }
+                Files.move(temp, target.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+                Utils.syncDirectory(parent);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Writes the payload of object ID to FILE, creating or overwriting it
+     *  as needed, without reading the whole object into memory. */
+    void copyTo(ObjectId id, File file) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        Pack pack = pack(id);
+        if (pack != null) {
+            Utils.writeContents(file, pack.get(id));
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file(id).toPath());
+             FileChannel out = new FileOutputStream(file).getChannel()) {
+            long position = 1, size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of the object ID, or null if there is none. */
+    byte[] get(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        if (!file(id).isFile()) {
+            Pack pack = pack(id);
+            return pack == null ? null : pack.get(id);
+        }
+        byte[] contents = Utils.readContents(file(id));
+        return Arrays.copyOfRange(contents, 1, contents.length);
+    }
+
+    /** Returns the payload of object ID if it has type tag TYPE, or null
+     *  if there is no such object or it has another type.  The object is
+     *  only read once, unlike with type() followed by get(). */
+    byte[] get(ObjectId id, byte type) {
+        if (id == null) {
+            return null;
+        }
+        if (!file(id).isFile()) {
+            Pack pack = pack(id);
+            return pack == null ? null : pack.get(id, type);
+        }
+        byte[] contents = Utils.readContents(file(id));
+        return contents.length > 0 && contents[0] == type
+            ? Arrays.copyOfRange(contents, 1, contents.length) : null;
+    }
+
+    /** Returns the size of the payload of object ID, or -1 if there is
+     *  none. */
+    long size(ObjectId id) {
+        if (!file(id).isFile()) {
+            Pack pack = pack(id);
+            return pack == null ? -1 : pack.size(id);
+        }
+        return file(id).length() - 1;
+    }
+
+    /** Deletes the loose object ID, if there is one. */
+    void delete(ObjectId id) {
+        File file = file(id);
+        if (file.delete()) {
+            file.getParentFile().delete();
+        }
+    }
+
+    /** Returns the number of bytes taken by all loose objects and
+     *  packs. */
+    long diskUsage() {
+        long total = 0;
+        for (ObjectId id : looseIds()) {
+            total += file(id).length();
+        }
+        for (Pack pack : packs()) {
+            total += pack.length();
+        }
+        return total;
+    }
+
+    /** Returns the type tag of object ID, or 0 if there is none. */
+    byte type(ObjectId id) {
+        if (!file(id).isFile()) {
+            Pack pack = pack(id);
+            return pack == null ? 0 : pack.type(id);
+        }
+        try (FileInputStream in = new FileInputStream(file(id))) {
+            return (byte) in.read();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of all stored objects, in order. */
+    List<ObjectId> ids() {
+        TreeSet<ObjectId> result = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                result.add(pack.id(k));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the ids of all loose objects, in order. */
+    List<ObjectId> looseIds() {
+        List<ObjectId> result = new ArrayList<>();
+        for (String prefix : Utils.directoriesIn(_dir)) {
+            if (prefix.length() != 2) {
+                continue;
+            }
+            for (String rest : Utils.plainFilenamesIn(new File(_dir, prefix))) {
+                if (ObjectId.isValid(prefix + rest)) {
+                    result.add(ObjectId.parse(prefix + rest));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the loose objects that pack() would move: those
+     *  of at most MAX_PACKED_SIZE bytes, in order. */
+    List<ObjectId> packableIds() {
+        List<ObjectId> ids = new ArrayList<>();
+        for (ObjectId id : looseIds()) {
+            if (file(id).length() <= MAX_PACKED_SIZE) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /** Moves all loose objects of at most MAX_PACKED_SIZE bytes into a new
+     *  pack, and returns it, or null if there were none to move.  PATHS
+     *  gives, where known, a path at which each object appears, which
+     *  decides which objects are tried as delta bases of one another. */
+    Pack pack(Map<ObjectId, String> paths) {
+        List<ObjectId> ids = packableIds();
+        if (ids.isEmpty()) {
+            return null;
+        }
+        Pack pack = Pack.write(new File(_dir, "pack"), this, ids, paths);
+        packs().add(pack);
+        for (ObjectId id : ids) {
+            delete(id);
+        }
+        return pack;
+    }
+
+    /** Replaces all packs and all loose objects of at most MAX_PACKED_SIZE
+     *  bytes with a single pack of those whose ids are in KEEP, deleting
+     *  the rest.  Returns the new pack, or null if there was nothing to
+     *  keep.  PATHS is as for pack. */
+    Pack repack(Set<ObjectId> keep, Map<ObjectId, String> paths) {
+        List<ObjectId> ids = new ArrayList<>();
+        for (ObjectId id : ids()) {
+            if (keep.contains(id) && size(id) <= MAX_PACKED_SIZE) {
+                ids.add(id);
+            }
+        }
+        Pack pack = ids.isEmpty() ? null
+            : Pack.write(new File(_dir, "pack"), this, ids, paths);
+        for (Pack old : packs()) {
+            if (pack == null || !old.name().equals(pack.name())) {
+                old.delete();
+            }
+        }
+        packs().clear();
+        if (pack != null) {
+            packs().add(pack);
+        }
+        for (ObjectId id : ids) {
+            delete(id);
+        }
+        return pack;
+    }
+
+    /** Returns the packs of this store, reading their indices the first
+     *  time. */
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File dir = new File(_dir, "pack");
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                return _packs;
+            }
+            for (String name : names) {
+                if (name.endsWith(".idx")) {
+                    _packs.add(new Pack(new File(dir, name)));
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Returns the pack holding object ID, or null if none does. */
+    private Pack pack(ObjectId id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the file holding object ID. */
+    File file(ObjectId id) {
+        String hex = id.toString();
+        return Utils.join(_dir, hex.substring(0, 2), hex.substring(2));
+    }
+
+    /** The root directory of this store. */
+    private final File _dir;
+    /** The packs in _dir/pack, or null if not yet read. */
+    private List<Pack> _packs;
+}
@@ -0,0 +1,468 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A pack: many objects stored together in one file, each compressed
+ *  with Deflate and, where a similar object of the same type is at
+ *  hand, stored as a Delta against it.  A pack NAME consists of
+ *  <ul>
+ *  <li> NAME.pack: a header (magic, version, object count) followed by
+ *       one entry per object: its type tag, 0 for a whole object or 1
+ *       for a delta followed by the raw id of the delta's base, the
+ *       inflated and deflated sizes, and the deflated bytes; and
+ *  <li> NAME.idx: a header (magic and version), a fan-out table of 256
+ *       counts, the Kth being the number of objects whose first id byte
+ *       is at most K, the sorted raw ids of the objects and then, in the
+ *       same order, the offsets of their entries in NAME.pack.
+ *  </ul>
+ *  The index is memory-mapped rather than read, so opening a pack costs
+ *  nothing in proportion to its size.  A lookup narrows the ids by
+ *  their first byte with the fan-out table and then does a binary
+ *  search over the mapped ids.
+ *  @author Jianing Yu
+ */
+class Pack {
+
+    /** Magic number at the start of a pack file. */
+    static final int PACK_MAGIC = 0x4750414b;
+    /** Magic number at the start of an index file. */
+    static final int INDEX_MAGIC = 0x47494458;
+    /** Format version of the pack file. */
+    static final int VERSION = 1;
+    /** Format version of the index file. */
+    static final int INDEX_VERSION = 2;
+
+    /** How many preceding objects are tried as delta bases. */
+    static final int WINDOW = 10;
+    /** The longest chain of deltas allowed before a base. */
+    static final int MAX_DEPTH = 10;
+
+    /** Entry kind of a whole object. */
+    private static final byte WHOLE = 0;
+    /** Entry kind of a delta. */
+    private static final byte DELTA = 1;
+    /** The size of a raw object id. */
+    private static final int ID_SIZE = ObjectId.SIZE;
+    /** The number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+    /** The size of the index header and fan-out table. */
+    private static final int INDEX_HEADER = 2 * Integer.BYTES
+        + FANOUT * Integer.BYTES;
+
+    /** Writes the objects IDS of STORE to a new pack in DIR, and
+     *  returns it.  PATHS gives, where known, a path at which each object
+     *  appears in some commit.  Objects are sorted by type, then path, so
+     *  that versions of one file are together, and then by decreasing
+     *  size, and each is stored as a delta against whichever of the
+     *  WINDOW objects before it gives the smallest delta, if that delta
+     *  is less than half the object's size.  Both files are written
+     *  under temporary names and forced to disk, and the index is
+     *  renamed last, so the pack is only seen once it is complete. */
+    static Pack write(File dir, ObjectStore store, List<ObjectId> ids,
+                      Map<ObjectId, String> paths) {
+        List<Candidate> objects = new ArrayList<>();
+        for (ObjectId id : ids) {
+            objects.add(new Candidate(id, store.type(id), store.size(id),
+                                      paths.getOrDefault(id, "")));
+        }
+        objects.sort(Comparator.comparingInt((Candidate c) -> c._type)
+                     .thenComparing(c -> c._path)
+                     .thenComparing(c -> -c._size)
+                     .thenComparing(c -> c._id));
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw Utils.error("Unable to create directory");
+        }
+        File temp = new File(dir, "tmp.pack");
+        ObjectId[] packedIds = new ObjectId[objects.size()];
+        long[] offsets = new long[objects.size()];
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(file))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(objects.size());
+            LinkedList<Candidate> window = new LinkedList<>();
+            int i = 0;
+            for (Candidate object : objects) {
+                object._data = store.get(object._id);
+                Candidate base = null;
+                byte[] best = null;
+                for (Candidate other : window) {
+                    if (other._type != object._type
+                        || other._depth >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] delta = Delta.compute(other._data, object._data);
+                    if (delta != null && delta.length < object._data.length / 2
+                        && (best == null || delta.length < best.length)) {
+                        best = delta;
+                        base = other;
+                    }
+                }
+                packedIds[i] = object._id;
+                offsets[i] = out.size();
+                i += 1;
+                out.writeByte(object._type);
+                if (base == null) {
+                    out.writeByte(WHOLE);
+                    writeDeflated(out, object._data);
+                } else {
+                    object._depth = base._depth + 1;
+                    out.writeByte(DELTA);
+                    out.write(base._id.toBytes());
+                    writeDeflated(out, best);
+                }
+                window.addFirst(object);
+                if (window.size() > WINDOW) {
+                    window.removeLast()._data = null;
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Integer[] order = new Integer[packedIds.length];
+        for (int k = 0; k < order.length; k += 1) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.comparing(k -> packedIds[k]));
+        List<String> names = new ArrayList<>();
+        for (int k : order) {
+            names.add(packedIds[k].toString());
+        }
+        String name = "pack-" + Utils.sha1(names);
+        File index = new File(dir, name + ".idx");
+        File tempIndex = new File(dir, "tmp.idx");
+        try (FileOutputStream file = new FileOutputStream(tempIndex);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(file))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            int[] fanout = new int[FANOUT];
+            for (ObjectId id : packedIds) {
+                fanout[id.firstByte()] += 1;
+            }
+            for (int b = 0, total = 0; b < FANOUT; b += 1) {
+                total += fanout[b];
+                out.writeInt(total);
+            }
+            for (int k : order) {
+                out.write(packedIds[k].toBytes());
+            }
+            for (int k : order) {
+                out.writeLong(offsets[k]);
+            }
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), new File(dir, name + ".pack").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempIndex.toPath(), index.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            Utils.syncDirectory(dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new Pack(index);
+    }
+
+    /** The pack whose index file is INDEX. */
+    Pack(File index) {
+        String name = index.getName();
+        _index = index;
+        _pack = new File(index.getParentFile(),
+                         name.substring(0, name.length() - ".idx".length())
+                         + ".pack");
+        try (FileChannel channel = FileChannel.open(index.toPath())) {
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_map.limit() < INDEX_HEADER || _map.getInt(0) != INDEX_MAGIC
+            || _map.getInt(Integer.BYTES) != INDEX_VERSION) {
+            throw Utils.error("Unrecognized pack index %s.", name);
+        }
+        _size = _map.getInt(INDEX_HEADER - Integer.BYTES);
+        _offsetsStart = INDEX_HEADER + _size * ID_SIZE;
+    }
+
+    /** Returns the total size in bytes of this pack's files. */
+    long length() {
+        return _pack.length() + _index.length();
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the id of the Kth object in this pack, in id order. */
+    ObjectId id(int k) {
+        int base = INDEX_HEADER + k * ID_SIZE;
+        return new ObjectId(_map.getInt(base), _map.getInt(base + 4),
+                            _map.getInt(base + 8), _map.getInt(base + 12),
+                            _map.getInt(base + 16));
+    }
+
+    /** Returns true iff object ID is in this pack. */
+    boolean contains(ObjectId id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the type tag of object ID, or 0 if it is not in this
+     *  pack. */
+    byte type(ObjectId id) {
+        int k = find(id);
+        if (k < 0) {
+            return 0;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            file.seek(offset(k));
+            return file.readByte();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the size of the payload of object ID, or -1 if it is not
+     *  in this pack.  Only the start of a delta is inflated, to read the
+     *  target length recorded there. */
+    long size(ObjectId id) {
+        int k = find(id);
+        if (k < 0) {
+            return -1;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            file.seek(offset(k));
+            file.readByte();
+            if (file.readByte() == WHOLE) {
+                return file.readInt();
+            }
+            file.skipBytes(ID_SIZE);
+            file.readInt();
+            byte[] deflated = new byte[file.readInt()];
+            file.readFully(deflated);
+            byte[] header = new byte[2 * 10];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(deflated);
+                inflater.inflate(header);
+            } catch (DataFormatException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                inflater.end();
+            }
+            int[] pos = { 0 };
+            Delta.readVarint(header, pos);
+            return Delta.readVarint(header, pos);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes the files of this pack. */
+    void delete() {
+        _index.delete();
+        _pack.delete();
+    }
+
+    /** Returns the name shared by the files of this pack. */
+    String name() {
+        String name = _index.getName();
+        return name.substring(0, name.length() - ".idx".length());
+    }
+
+    /** Returns the payload of object ID, or null if it is not in this
+     *  pack.  Deltas are resolved against their bases. */
+    byte[] get(ObjectId id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            return read(file, offset(k));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of object ID if it is in this pack with type
+     *  tag TYPE, or null otherwise. */
+    byte[] get(ObjectId id, byte type) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_pack, "r")) {
+            file.seek(offset(k));
+            return file.readByte() == type ? read(file, offset(k)) : null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the payload of the entry at OFFSET in FILE. */
+    private byte[] read(RandomAccessFile file, long offset)
+        throws IOException {
+        file.seek(offset);
+        file.readByte();
+        byte kind = file.readByte();
+        byte[] base = null;
+        if (kind == DELTA) {
+            byte[] rawBaseId = new byte[ID_SIZE];
+            file.readFully(rawBaseId);
+            ObjectId baseId = ObjectId.fromBytes(rawBaseId);
+            int k = find(baseId);
+            if (k < 0) {
+                throw Utils.error("Missing delta base %s.", baseId);
+            }
+            long next = file.getFilePointer();
+            base = read(file, offset(k));
+            file.seek(next);
+        }
+        byte[] data = new byte[file.readInt()];
+        byte[] deflated = new byte[file.readInt()];
+        file.readFully(deflated);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            inflater.inflate(data);
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return base == null ? data : Delta.apply(base, data);
+    }
+
+    /** Returns the position of ID among the sorted ids of this pack, or
+     *  -1 if it is absent. */
+    private int find(ObjectId id) {
+        if (id == null) {
+            return -1;
+        }
+        int first = id.firstByte();
+        int lo = first == 0 ? 0 : fanout(first - 1), hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the number of ids in this pack whose first byte is at most
+     *  B. */
+    private int fanout(int b) {
+        return _map.getInt(2 * Integer.BYTES + b * Integer.BYTES);
+    }
+
+    /** Returns the offset in the pack file of the Kth object's entry. */
+    private long offset(int k) {
+        return _map.getLong(_offsetsStart + k * Long.BYTES);
+    }
+
+    /** Compares the Kth id of this pack with ID, returning a negative,
+     *  zero or positive value as it is less than, equal to or greater
+     *  than ID.  The ids are compared an int at a time, straight from the
+     *  mapped index. */
+    private int compareId(int k, ObjectId id) {
+        int base = INDEX_HEADER + k * ID_SIZE;
+        for (int i = 0; i < ObjectId.WORDS; i += 1) {
+            int cmp = Integer.compareUnsigned(
+                _map.getInt(base + i * Integer.BYTES), id.word(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Writes the sizes of DATA and of its deflated form to OUT, followed
+     *  by the deflated bytes. */
+    private static void writeDeflated(DataOutputStream out, byte[] data)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Utils.CHUNK_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                deflated.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        out.writeInt(data.length);
+        out.writeInt(deflated.size());
+        deflated.writeTo(out);
+    }
+
+    /** An object being considered for a pack. */
+    private static class Candidate {
+        /** Object ID of type TYPE whose payload is SIZE bytes, found at
+         *  PATH, or "" if that is unknown. */
+        Candidate(ObjectId id, byte type, long size, String path) {
+            _id = id;
+            _type = type;
+            _size = size;
+            _path = path;
+        }
+
+        /** The object id. */
+        private final ObjectId _id;
+        /** The type tag. */
+        private final byte _type;
+        /** The size of the payload. */
+        private final long _size;
+        /** A path at which the object appears, or "". */
+        private final String _path;
+        /** The payload, while in the delta window. */
+        private byte[] _data;
+        /** The length of the delta chain leading to this object. */
+        private int _depth;
+    }
+
+    /** The pack file. */
+    private final File _pack;
+    /** The index file. */
+    private final File _index;
+    /** The contents of the index file. */
+    private final MappedByteBuffer _map;
+    /** The number of objects. */
+    private final int _size;
+    /** The position in _map of the table of entry offsets. */
+    private final int _offsetsStart;
+}
@@ -0,0 +1,408 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** The contents of one directory in a commit: a sorted list of named
+ *  entries, each either a blob (a file) or another tree (a
+ *  subdirectory).  Trees are stored in an ObjectStore under the SHA-1
+ *  hash of their encoding, so directories that are unchanged between
+ *  commits are shared rather than stored again.
+ *  @author Jianing Yu
+ */
+class Tree {
+
+    /** Entry type of a file. */
+    static final byte BLOB = 'b';
+    /** Entry type of a subdirectory. */
+    static final byte TREE = 't';
+
+    /** The magic number of an encoded tree. */
+    static final int MAGIC = 0x474c5452;
+    /** The format version of an encoded tree. */
+    static final int VERSION = 1;
+
+    /** The id of the tree with no entries. */
+    static final ObjectId EMPTY = new Tree().id();
+
+    /** An empty tree. */
+    Tree() {
+        _entries = new TreeMap<>();
+    }
+
+    /** A tree with entries ENTRIES. */
+    private Tree(SortedMap<String, Entry> entries) {
+        _entries = entries;
+    }
+
+    /** Returns the entries of this tree, sorted by name. */
+    SortedMap<String, Entry> entries() {
+        return Collections.unmodifiableSortedMap(_entries);
+    }
+
+    /** Returns the encoding of this tree: the varint number of entries,
+     *  then for each its name as a string, its type as a varint and its
+     *  raw id (see Codec). */
+    byte[] encode() {
+        Codec.Encoder out = new Codec.Encoder(MAGIC, VERSION)
+            .varint(_entries.size());
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            out.string(entry.getKey()).varint(entry.getValue()._type)
+                .id(entry.getValue()._id);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the tree encoded in BYTES, as produced by encode(). */
+    static Tree decode(byte[] bytes) {
+        Codec.Decoder in = new Codec.Decoder(bytes, MAGIC, VERSION);
+        SortedMap<String, Entry> entries = new TreeMap<>();
+        for (long n = in.varint(); n > 0; n -= 1) {
+            String name = in.string();
+            byte type = (byte) in.varint();
+            entries.put(name, new Entry(type, in.id()));
+        }
+        return new Tree(entries);
+    }
+
+    /** Returns the id of this tree: the SHA-1 hash of its encoding,
+     *  prefixed so that it cannot collide with a blob of the same
+     *  bytes. */
+    ObjectId id() {
+        return ObjectId.hash("tree\0".getBytes(StandardCharsets.UTF_8),
+                             encode());
+    }
+
+    /** Stores the trees describing FILES, a map from working-directory
+     *  relative paths to blob ids, in STORE and returns the id of the root
+     *  tree.  Trees already in STORE are not written again. */
+    static ObjectId write(ObjectStore store, Map<File, ObjectId> files) {
+        return write(store, null, files);
+    }
+
+    /** Stores in STORE the trees describing the files under the tree BASE
+     *  of STORE with CHANGES made, and returns the id of the new root
+     *  tree.  CHANGES maps working-directory relative paths to new blob
+     *  ids, or to null for files removed.  Only the trees along the paths
+     *  in CHANGES are read, encoded and hashed; the rest are shared with
+     *  BASE.  If BASE is null, the files are CHANGES alone. */
+    static ObjectId write(ObjectStore store, ObjectId base,
+                          Map<File, ObjectId> changes) {
+        Node root = new Node(store, base);
+        for (Map.Entry<File, ObjectId> entry : changes.entrySet()) {
+            Node node = root;
+            Path path = entry.getKey().toPath();
+            for (int i = 0; i < path.getNameCount() - 1; i += 1) {
+                node = node.dir(store, path.getName(i).toString());
+            }
+            node.put(path.getFileName().toString(), entry.getValue());
+        }
+        return root.write(store);
+    }
+
+    /** Returns the tree with id ID in STORE. */
+    static Tree read(ObjectStore store, ObjectId id) {
+        byte[] payload = store.get(id);
+        if (payload == null) {
+            throw Utils.error("Missing tree %s.", id);
+        }
+        return decode(payload);
+    }
+
+    /** Adds to RESULT the id of tree ID in STORE and of every tree and
+     *  blob under it, and records in PATHS, for each id newly added to
+     *  RESULT, the path at which it was found, with '/' between names
+     *  ("" for tree ID itself).  Subtrees already in RESULT are not read
+     *  again. */
+    static void reachable(ObjectStore store, ObjectId id,
+                          Set<ObjectId> result, Map<ObjectId, String> paths) {
+        reachable(store, id, "", result, paths);
+    }
+
+    /** As for reachable(STORE, ID, RESULT, PATHS), where tree ID is at
+     *  PATH. */
+    private static void reachable(ObjectStore store, ObjectId id,
+                                  String path, Set<ObjectId> result,
+                                  Map<ObjectId, String> paths) {
+        if (!result.add(id)) {
+            return;
+        }
+        paths.putIfAbsent(id, path);
+        for (Map.Entry<String, Entry> entry
+                 : read(store, id)._entries.entrySet()) {
+            Entry child = entry.getValue();
+            String name = path.isEmpty() ? entry.getKey()
+                : path + "/" + entry.getKey();
+            if (child._type == TREE) {
+                reachable(store, child._id, name, result, paths);
+            } else if (result.add(child._id)) {
+                paths.put(child._id, name);
+            }
+        }
+    }
+
+    /** Returns all files under the tree ID in STORE, as a map from
+     *  working-directory relative paths to blob ids. */
+    static Map<File, ObjectId> files(ObjectStore store, ObjectId id) {
+        Map<File, ObjectId> result = new TreeMap<>();
+        files(store, id, null, result);
+        return result;
+    }
+
+    /** Adds all files under the tree ID in STORE to RESULT, naming them
+     *  relative to DIR, or to the working directory if DIR is null. */
+    private static void files(ObjectStore store, ObjectId id, File dir,
+                              Map<File, ObjectId> result) {
+        for (Map.Entry<String, Entry> entry
+                 : read(store, id)._entries.entrySet()) {
+            String name = entry.getKey();
+            File file = dir == null ? new File(name) : new File(dir, name);
+            if (entry.getValue()._type == TREE) {
+                files(store, entry.getValue()._id, file, result);
+            } else {
+                result.put(file, entry.getValue()._id);
+            }
+        }
+    }
+
+    /** Returns the id of the blob or tree at PATH, a relative path with
+     *  '/' between names, under the tree ID in STORE, or null if there is
+     *  none.  Only the trees along PATH are read. */
+    static ObjectId lookup(ObjectStore store, ObjectId id, String path) {
+        Entry entry = new Entry(TREE, id);
+        for (String name : path.split("/")) {
+            if (!entry.isTree()) {
+                return null;
+            }
+            entry = read(store, entry._id)._entries.get(name);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry._id;
+    }
+
+    /** Returns the files that differ between the trees BEFORE and AFTER
+     *  in STORE, in the order of the trees' entries.  The entries of the
+     *  two trees are merge-joined by name, and subtrees with the same id
+     *  in both are skipped without being read, so the cost depends on
+     *  what changed rather than on the number of files. */
+    static List<Change> diff(ObjectStore store, ObjectId before,
+                             ObjectId after) {
+        List<Change> result = new ArrayList<>();
+        diff(store, before, after, null, result);
+        return result;
+    }
+
+    /** Returns the files that differ between BEFORE and AFTER, two maps
+     *  from working-directory relative paths to blob ids, in order of
+     *  path. */
+    static List<Change> diff(SortedMap<File, ObjectId> before,
+                             SortedMap<File, ObjectId> after) {
+        List<Change> result = new ArrayList<>();
+        join(before, after,
+             (file, old, now) -> result.add(new Change(file, old, now)));
+        return result;
+    }
+
+    /** Adds to RESULT the files that differ between the trees BEFORE and
+     *  AFTER in STORE, either of which may be null for none, naming them
+     *  relative to DIR, or to the working directory if DIR is null. */
+    private static void diff(ObjectStore store, ObjectId before,
+                             ObjectId after, File dir, List<Change> result) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        SortedMap<String, Entry> none = Collections.emptySortedMap();
+        join(before == null ? none : read(store, before)._entries,
+             after == null ? none : read(store, after)._entries,
+             (name, old, now) -> {
+                File file = dir == null ? new File(name) : new File(dir, name);
+                if (!Objects.equals(id(old, BLOB), id(now, BLOB))) {
+                    result.add(new Change(file, id(old, BLOB),
+                                          id(now, BLOB)));
+                }
+                diff(store, id(old, TREE), id(now, TREE), file, result);
+            });
+    }
+
+    /** Returns the id of ENTRY if it is not null and has type TYPE, and
+     *  otherwise null. */
+    private static ObjectId id(Entry entry, byte type) {
+        return entry != null && entry._type == type ? entry._id : null;
+    }
+
+    /** Calls VISITOR, in order of key, with each key of BEFORE or AFTER
+     *  whose values in the two differ, and with those values, null where
+     *  the key is absent.  The maps are walked side by side. */
+    private static <K extends Comparable<K>, V> void join(
+        SortedMap<K, V> before, SortedMap<K, V> after,
+        Visitor<K, V> visitor) {
+        Iterator<Map.Entry<K, V>> olds = before.entrySet().iterator(),
+            news = after.entrySet().iterator();
+        Map.Entry<K, V> old = next(olds), now = next(news);
+        while (old != null || now != null) {
+            int cmp = old == null ? 1
+                : now == null ? -1 : old.getKey().compareTo(now.getKey());
+            V oldValue = cmp <= 0 ? old.getValue() : null,
+                newValue = cmp >= 0 ? now.getValue() : null;
+            if (!Objects.equals(oldValue, newValue)) {
+                visitor.visit(cmp <= 0 ? old.getKey() : now.getKey(),
+                              oldValue, newValue);
+            }
+            if (cmp <= 0) {
+                old = next(olds);
+            }
+            if (cmp >= 0) {
+                now = next(news);
+            }
+        }
+    }
+
+    /** Returns the next element of ITERATOR, or null if there is none. */
+    private static <T> T next(Iterator<T> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /** Receives the keys that differ between two maps. */
+    private interface Visitor<K, V> {
+        /** Receives KEY, with value BEFORE in the first map and AFTER in
+         *  the second, either null if absent. */
+        void visit(K key, V before, V after);
+    }
+
+    /** A file that differs between two versions. */
+    static class Change {
+        /** A change to FILE from blob BEFORE to blob AFTER, either of
+         *  which is null if the file is absent from that version. */
+        Change(File file, ObjectId before, ObjectId after) {
+            _file = file;
+            _before = before;
+            _after = after;
+        }
+
+        /** The file, relative to the working directory. */
+        final File _file;
+        /** The blob before, or null if the file was added. */
+        final ObjectId _before;
+        /** The blob after, or null if the file was removed. */
+        final ObjectId _after;
+    }
+
+    /** One named entry of a tree. */
+    static class Entry {
+        /** An entry of type TYPE with id ID. */
+        Entry(byte type, ObjectId id) {
+            _type = type;
+            _id = id;
+        }
+
+        /** Returns true iff this entry is a subdirectory. */
+        boolean isTree() {
+            return _type == TREE;
+        }
+
+        /** Returns the id of the blob or tree this entry names. */
+        ObjectId id() {
+            return _id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj)._type == _type
+                && ((Entry) obj)._id.equals(_id);
+        }
+
+        @Override
+        public int hashCode() {
+            return _id.hashCode();
+        }
+
+        /** BLOB or TREE. */
+        private final byte _type;
+        /** The id of the blob or tree. */
+        private final ObjectId _id;
+    }
+
+    /** A directory being assembled by write(). */
+    private static class Node {
+        /** The directory that is the tree BASE of STORE, or a new, empty
+         *  one if BASE is null. */
+        Node(ObjectStore store, ObjectId base) {
+            _base = base;
+            _entries = base == null ? new TreeMap<>()
+                : new TreeMap<>(read(store, base)._entries);
+        }
+
+        /** Returns the subdirectory NAME, reading it from STORE the first
+         *  time, or starting it empty if there is no such subdirectory. */
+        Node dir(ObjectStore store, String name) {
+            _changed = true;
+            Node result = _dirs.get(name);
+            if (result == null) {
+                Entry entry = _entries.get(name);
+                result = new Node(store, entry != null && entry.isTree()
+                                  ? entry._id : null);
+                _dirs.put(name, result);
+            }
+            return result;
+        }
+
+        /** Makes NAME the file with blob ID, or removes the file NAME if
+         *  ID is null. */
+        void put(String name, ObjectId id) {
+            _changed = true;
+            if (id != null) {
+                _entries.put(name, new Entry(BLOB, id));
+            } else if (_entries.containsKey(name)
+                       && !_entries.get(name).isTree()) {
+                _entries.remove(name);
+            }
+        }
+
+        /** Stores this directory and its changed subdirectories in STORE
+         *  and returns its id.  Subdirectories left empty are dropped. */
+        ObjectId write(ObjectStore store) {
+            if (_base != null && !_changed) {
+                return _base;
+            }
+            for (Map.Entry<String, Node> dir : _dirs.entrySet()) {
+                ObjectId id = dir.getValue().write(store);
+                Entry entry = _entries.get(dir.getKey());
+                if (!id.equals(EMPTY)) {
+                    _entries.put(dir.getKey(), new Entry(TREE, id));
+                } else if (entry != null && entry.isTree()) {
+                    _entries.remove(dir.getKey());
+                }
+            }
+            Tree tree = new Tree(_entries);
+            ObjectId id = tree.id();
+            if (!store.contains(id)) {
+                store.put(id, ObjectStore.TREE, tree.encode());
+            }
+            return id;
+        }
+
+        /** The tree this directory started from, or null if new. */
+        private final ObjectId _base;
+        /** Entries by name, as changed so far. */
+        private final SortedMap<String, Entry> _entries;
+        /** Subdirectories reached by changes, by name. */
+        private final Map<String, Node> _dirs = new TreeMap<>();
+        /** True iff changes have been made under this directory. */
+        private boolean _changed;
+    }
+
+    /** Entries by name. */
+    private final SortedMap<String, Entry> _entries;
+}
@@ -4,8 +4,26 @@ import org.junit.Assert;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 
@@ -22,8 +40,7 @@ public class UnitTest {
 
     @Test
     public void testInit() {
-        Utils.join(".gitlet", "git").delete();
-        new File(".gitlet").delete();
+        deleteRecursively(new File(".gitlet"));
         Main.main("init");
         Assert.assertTrue(new File(".gitlet").exists());
     }
@@ -31,8 +48,7 @@ public class UnitTest {
 
     @Test
     public void testAdd() {
-        Utils.join(".gitlet", "git").delete();
-        new File(".gitlet").delete();
+        deleteRecursively(new File(".gitlet"));
         Main.main("init");
         Utils.writeContents(new File("wug.txt"),
                 "Hello World".getBytes(StandardCharsets.UTF_8));
@@ -42,8 +58,7 @@ public class UnitTest {
 
     @Test
     public void testCommit() {
-        Utils.join(".gitlet", "git").delete();
-        new File(".gitlet").delete();
+        deleteRecursively(new File(".gitlet"));
         Main.main("init");
         Utils.writeContents(new File("wug.txt"),
                 "Hello World".getBytes(StandardCharsets.UTF_8));
@@ -52,6 +67,999 @@ public class UnitTest {
         Assert.assertTrue(new File(".gitlet").exists());
     }
 
+    @Test
+    public void testSha1() {
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+        String expected = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        assertEquals(expected, Utils.sha1("abc"));
+        assertEquals(expected, Utils.sha1(abc));
+        assertEquals(expected, Utils.sha1(ByteBuffer.wrap(abc)));
+        assertEquals(expected,
+                Utils.sha1(new ByteArrayInputStream(abc)));
+        assertEquals(expected, Utils.sha1("a", "bc"));
+    }
+
+    @Test
+    public void testMergeBase() throws IOException {
+        File file = File.createTempFile("commit-graph", null);
+        file.deleteOnExit();
+        ObjectId root = id("root");
+        CommitGraph.append(file, root, 1, Collections.emptyList());
+        ObjectId prev = root;
+        for (int i = 0; i < 100000; i += 1) {
+            ObjectId next = ObjectId.hash(prev.toBytes());
+            CommitGraph.append(file, next, i + 2,
+                    Collections.singletonList(prev));
+            prev = next;
+        }
+        ObjectId a = id("a"), b = id("b");
+        CommitGraph.append(file, a, 100002, Collections.singletonList(prev));
+        CommitGraph.append(file, b, 100002, Collections.singletonList(prev));
+        ObjectId merge = id("merge");
+        CommitGraph.append(file, merge, 100003, Arrays.asList(a, b));
+        CommitGraph graph = CommitGraph.read(file);
+        assertEquals(100004, graph.size());
+        assertEquals(prev, graph.mergeBase(a, b));
+        assertEquals(a, graph.mergeBase(merge, a));
+        assertEquals(root, graph.mergeBase(root, merge));
+        assertEquals(Collections.singletonList(a),
+                graph.withPrefix(a.toString().substring(0, 8)));
+        assertEquals(100004, graph.withPrefix("").size());
+        assertTrue(graph.withPrefix("xyz").isEmpty());
+    }
+
+    @Test
+    public void testTornAppend() throws IOException {
+        File file = File.createTempFile("commit-graph", null);
+        file.deleteOnExit();
+        file.delete();
+        ObjectId a = id("a"), b = id("b"), c = id("c");
+        CommitGraph.append(file, a, 1, Collections.emptyList());
+        CommitGraph.append(file, b, 2, Collections.singletonList(a));
+        Utils.appendRecords(file, 1, new byte[] { 1, 2, 3 }, false);
+        assertEquals(2, CommitGraph.read(file).size());
+        CommitGraph.append(file, c, 3, Arrays.asList(b, a));
+        CommitGraph graph = CommitGraph.read(file);
+        assertEquals(3, graph.size());
+        assertEquals(3, graph.generation(graph.position(c)));
+        assertEquals(2, graph.parents(graph.position(c)).length);
+        assertEquals(b, graph.mergeBase(b, c));
+    }
+
+    @Test
+    public void testCodec() {
+        List<File> paths = Arrays.asList(new File("a.txt"),
+                new File("dir", "b.txt"), new File("dir", "c.txt"),
+                new File(new File("dir", "sub"), "d.txt"));
+        byte[] bytes = new Codec.Encoder(0x54455354, 3).varint(300)
+                .signed(-5).string("h\u00e9llo").string(null)
+                .id(id("x")).paths(paths).toByteArray();
+        assertFalse(Codec.isSerialized(bytes));
+        assertTrue(Codec.isSerialized(Utils.serialize("x")));
+        Codec.Decoder in = new Codec.Decoder(bytes, 0x54455354, 3);
+        assertEquals(3, in.version());
+        assertEquals(300, in.varint());
+        assertEquals(-5, in.signed());
+        assertEquals("h\u00e9llo", in.string());
+        assertNull(in.string());
+        assertEquals(id("x"), in.id());
+        assertEquals(paths, in.paths());
+    }
+
+    @Test
+    public void testDateIndex() throws IOException {
+        File file = File.createTempFile("dates", null);
+        file.delete();
+        file.deleteOnExit();
+        DateIndex dates = new DateIndex(file);
+        for (int i = 0; i < 3000; i += 1) {
+            dates.add(id(Integer.toString(i)), i * 10);
+        }
+        Utils.appendRecords(file, 1, new byte[3], false);
+        dates.add(id("late"), 15);
+        assertEquals(3001L * DateIndex.RECORD_SIZE, file.length());
+        List<ObjectId> ids = new ArrayList<>();
+        for (ObjectId id : dates.newestFirst(0, Long.MAX_VALUE)) {
+            ids.add(id);
+        }
+        assertEquals(3001, ids.size());
+        assertEquals(id("2999"), ids.get(0));
+        assertEquals(id("late"), ids.get(2998));
+        ids.clear();
+        for (ObjectId id : dates.newestFirst(10, 20)) {
+            ids.add(id);
+        }
+        assertEquals(Arrays.asList(id("2"), id("late"), id("1")), ids);
+    }
+
+    @Test
+    public void testMessageIndex() throws IOException {
+        File dir = repository();
+        MessageIndex index = new MessageIndex(dir);
+        List<ObjectId> same = new ArrayList<>();
+        int count = 2 * MessageIndex.LOG_RECORDS + 10;
+        for (int i = 0; i < count; i += 1) {
+            ObjectId id = id(Integer.toString(i));
+            if (i % 2 == 0) {
+                index.add(id, "same message");
+                same.add(id);
+            } else {
+                index.add(id, "note " + i);
+            }
+        }
+        assertEquals(same, index.exact("same message"));
+        assertEquals(Arrays.asList(id("7")), index.exact("note 7"));
+        assertTrue(index.exact("note 8").isEmpty());
+        assertEquals(same, index.containing("same mess"));
+        assertTrue(index.containing("note 123").contains(id("123")));
+        assertTrue(index.containing("absent").isEmpty());
+        String[] sorted = new File(dir, "grams").list(
+            (d, name) -> name.endsWith(".sorted"));
+        assertTrue(sorted.length > 0);
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testDelta() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.insert(0, "new first line\n");
+        text.replace(5000, 5004, "EDIT");
+        text.append("new last line\n");
+        byte[] target = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.compute(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        byte[] unrelated = new byte[300];
+        delta = Delta.compute(base, unrelated);
+        assertArrayEquals(unrelated, Delta.apply(base, delta));
+        assertNull(Delta.compute(new byte[3], target));
+    }
+
+    @Test
+    public void testDiff() {
+        int[] a = { 1, 2, 3, 4, 5, 6 }, b = { 9, 1, 3, 4, 7, 6 };
+        assertArrayEquals(new int[] { 1, -1, 2, 3, -1, 5 },
+                Diff.match(a, b));
+        byte[] base = bytes("a\nb\nc\nd\ne\n");
+        Diff.Merge merge = Diff.merge(base, bytes("A\nb\nc\nd\ne\n"),
+                bytes("a\nb\nc\nd\nE\nf\n"));
+        assertFalse(merge._conflict);
+        assertArrayEquals(bytes("A\nb\nc\nd\nE\nf\n"), merge._contents);
+        String nl = System.lineSeparator();
+        merge = Diff.merge(base, bytes("a\nB\nc\nd\ne\n"),
+                bytes("a\nX\nc\nd\ne"));
+        assertTrue(merge._conflict);
+        assertArrayEquals(bytes("a\n<<<<<<< HEAD" + nl + "B\n=======" + nl
+                + "X\n>>>>>>>" + nl + "c\nd\ne"), merge._contents);
+    }
+
+    @Test
+    public void testTreeDiff() throws IOException {
+        File dir = File.createTempFile("objects", null);
+        dir.delete();
+        ObjectStore store = new ObjectStore(dir);
+        TreeMap<File, ObjectId> before = new TreeMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            before.put(new File(new File("d" + i % 5), "f" + i), id("" + i));
+        }
+        TreeMap<File, ObjectId> after = new TreeMap<>(before);
+        File changed = new File("d1", "f1"), added = new File("d9", "new");
+        after.put(changed, id("changed"));
+        after.put(added, id("new"));
+        after.remove(new File("d4", "f4"));
+        List<Tree.Change> changes = Tree.diff(store,
+                Tree.write(store, before), Tree.write(store, after));
+        assertEquals(3, changes.size());
+        assertEquals(changed, changes.get(0)._file);
+        assertEquals(id("1"), changes.get(0)._before);
+        assertEquals(new File("d4", "f4"), changes.get(1)._file);
+        assertNull(changes.get(1)._after);
+        assertEquals(added, changes.get(2)._file);
+        assertEquals(3, Tree.diff(before, after).size());
+        assertEquals(id("changed"),
+                     Tree.lookup(store, Tree.write(store, after), "d1/f1"));
+        assertNull(Tree.lookup(store, Tree.write(store, after), "d1/f1/x"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testTreeWriteChanges() throws IOException {
+        File dir = File.createTempFile("objects", null);
+        dir.delete();
+        ObjectStore store = new ObjectStore(dir);
+        TreeMap<File, ObjectId> before = new TreeMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            before.put(new File(new File("d" + i % 5, "e" + i % 2), "f" + i),
+                       id("" + i));
+        }
+        before.put(new File("top"), id("top"));
+        ObjectId base = Tree.write(store, before);
+        Map<File, ObjectId> changes = new HashMap<>();
+        TreeMap<File, ObjectId> after = new TreeMap<>(before);
+        changes.put(new File(new File("d1", "e1"), "f1"), id("changed"));
+        changes.put(new File(new File("d9", "x"), "new"), id("new"));
+        changes.put(new File("top"), null);
+        for (File file : before.keySet()) {
+            if (file.getPath().startsWith("d4")) {
+                changes.put(file, null);
+            }
+        }
+        changes.put(new File("d4"), id("file where a directory was"));
+        for (Map.Entry<File, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                after.remove(change.getKey());
+            } else {
+                after.put(change.getKey(), change.getValue());
+            }
+        }
+        assertEquals(Tree.write(store, after),
+                     Tree.write(store, base, changes));
+        assertEquals(base, Tree.write(store, base, new HashMap<>()));
+        assertEquals(Tree.EMPTY, Tree.write(store, new HashMap<>()));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testChangedPaths() throws IOException {
+        File file = File.createTempFile("changed-paths", null);
+        file.deleteOnExit();
+        List<Tree.Change> changes = Arrays.asList(
+            new Tree.Change(new File(new File("a", "b"), "c"), null, id("c")));
+        assertEquals(3, ChangedPaths.paths(changes).size());
+        ChangedPaths.write(file, 2, id("2"), ChangedPaths.paths(changes));
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i <= ChangedPaths.MAX_PATHS; i += 1) {
+            many.add("f" + i);
+        }
+        ChangedPaths.write(file, 3, id("3"), many);
+        ChangedPaths filters = new ChangedPaths(file);
+        assertFalse(filters.excludes(2, id("2"), "a/b/c"));
+        assertFalse(filters.excludes(2, id("2"), "a"));
+        int excluded = 0;
+        for (int i = 0; i < 100; i += 1) {
+            if (filters.excludes(2, id("2"), "f" + i)) {
+                excluded += 1;
+            }
+            assertFalse(filters.excludes(3, id("3"), "g" + i));
+        }
+        assertTrue(excluded > 90);
+        assertFalse(filters.excludes(0, id("0"), "x"));
+        assertFalse(filters.excludes(2, id("3"), "x"));
+        assertFalse(filters.excludes(4, id("4"), "x"));
+    }
+
+    @Test
+    public void testBlameCache() throws IOException {
+        File dir = File.createTempFile("blame", null);
+        dir.delete();
+        BlameCache cache = new BlameCache(dir);
+        assertNull(cache.get(id("c"), "a/b", id("blob")));
+        ObjectId[] lines = { id("1"), id("2"), id("1") };
+        cache.put(id("c"), "a/b", id("blob"), lines);
+        assertArrayEquals(lines, cache.get(id("c"), "a/b", id("blob")));
+        assertNull(cache.get(id("c"), "a/b", id("other")));
+        assertNull(cache.get(id("c"), "a/c", id("blob")));
+        cache.clear();
+        assertNull(cache.get(id("c"), "a/b", id("blob")));
+        dir.delete();
+    }
+
+    @Test
+    public void testBlobCache() throws IOException {
+        File dir = File.createTempFile("objects", null);
+        dir.delete();
+        ObjectStore store = new ObjectStore(dir);
+        String[] contents = { "aaaa", "bbbb", "cccc", "too large" };
+        ObjectId[] ids = new ObjectId[contents.length];
+        for (int i = 0; i < contents.length; i += 1) {
+            ids[i] = id(contents[i]);
+            store.put(ids[i], ObjectStore.BLOB, bytes(contents[i]));
+        }
+        BlobCache cache = new BlobCache(store, 8);
+        assertArrayEquals(bytes("aaaa"), cache.get(ids[0]));
+        assertArrayEquals(bytes("bbbb"), cache.get(ids[1]));
+        assertEquals(8, cache.size());
+        cache.get(ids[0]);
+        assertArrayEquals(bytes("cccc"), cache.get(ids[2]));
+        assertEquals(8, cache.size());
+        assertArrayEquals(bytes("too large"), cache.get(ids[3]));
+        assertEquals(8, cache.size());
+        for (ObjectId id : ids) {
+            store.delete(id);
+        }
+        assertArrayEquals(bytes("aaaa"), cache.get(ids[0]));
+        assertArrayEquals(bytes("cccc"), cache.get(ids[2]));
+        assertNull(cache.get(ids[1]));
+        assertNull(cache.get(ids[3]));
+        assertNull(cache.get(null));
+        deleteRecursively(dir);
+
+        dir = repository();
+        gitlet(dir, "init");
+        for (int i = 0; i < 10; i += 1) {
+            Utils.writeContents(new File(dir, i + ".txt"), bytes(i + "\n"));
+            gitlet(dir, "add", i + ".txt");
+        }
+        gitlet(dir, "commit", "before");
+        for (int i = 0; i < 10; i += 1) {
+            Utils.writeContents(new File(dir, i + ".txt"),
+                                bytes(i + "\nchanged\n"));
+            gitlet(dir, "add", i + ".txt");
+        }
+        gitlet(dir, "commit", "after");
+        String before = gitlet(dir, "find", "before").trim();
+        String after = gitlet(dir, "find", "after").trim();
+        String diff = gitlet(dir, "diff", before, after);
+        assertTrue(diff, diff.contains("+++ b/9.txt\n@@ -1 +1,2 @@\n"));
+        assertEquals(diff, run(dir, java(
+            "-D" + BlobCache.CAPACITY_PROPERTY + "=4", "gitlet.Main",
+            "diff", before, after)));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testPack() throws IOException {
+        File dir = File.createTempFile("objects", null);
+        dir.delete();
+        ObjectStore store = new ObjectStore(dir);
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i += 1) {
+            byte[] payload = ("object number " + i + " of five hundred")
+                .getBytes(StandardCharsets.UTF_8);
+            ObjectId id = ObjectId.hash(payload);
+            store.put(id, ObjectStore.BLOB, payload);
+            ids.add(id);
+        }
+        assertArrayEquals(store.get(ids.get(0)),
+                          store.get(ids.get(0), ObjectStore.BLOB));
+        assertNull(store.get(ids.get(0), ObjectStore.COMMIT));
+        assertEquals(500, store.pack(new HashMap<>()).size());
+        assertTrue(store.looseIds().isEmpty());
+        store = new ObjectStore(dir);
+        Collections.sort(ids);
+        assertEquals(ids, store.ids());
+        for (ObjectId id : ids) {
+            assertEquals(ObjectStore.BLOB, store.type(id));
+            assertEquals(id, ObjectId.hash(store.get(id)));
+            assertEquals(id, ObjectId.hash(store.get(id,
+                                                     ObjectStore.BLOB)));
+            assertNull(store.get(id, ObjectStore.COMMIT));
+        }
+        assertFalse(store.contains(id("missing")));
+        assertNull(store.get(id("missing")));
+        store.repack(new HashSet<>(ids.subList(0, 100)),
+                     new HashMap<>());
+        assertEquals(ids.subList(0, 100), store.ids());
+        assertEquals(ids.get(99), ObjectId.hash(store.get(ids.get(99))));
+        assertFalse(store.contains(ids.get(100)));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testPackPaths() throws IOException {
+        long[] sizes = new long[2];
+        for (int run = 0; run < 2; run += 1) {
+            File dir = File.createTempFile("objects", null);
+            dir.delete();
+            ObjectStore store = new ObjectStore(dir);
+            Map<ObjectId, String> paths = new HashMap<>();
+            Random random = new Random(61);
+            for (int f = 0; f < 2 * Pack.WINDOW; f += 1) {
+                byte[] text = new byte[4000];
+                random.nextBytes(text);
+                for (int v = 0; v < 4; v += 1) {
+                    byte[] payload = Arrays.copyOf(text,
+                        text.length + 100 * v + f);
+                    ObjectId id = ObjectId.hash(payload);
+                    store.put(id, ObjectStore.BLOB, payload);
+                    paths.put(id, "file" + f);
+                }
+            }
+            sizes[run] = store.pack(run == 0 ? new HashMap<>() : paths)
+                .length();
+            deleteRecursively(dir);
+        }
+        assertTrue(sizes[0] + " " + sizes[1], sizes[1] < sizes[0] / 2);
+    }
+
+    @Test
+    public void testObjectId() {
+        String hex = Utils.sha1("abc");
+        ObjectId id = ObjectId.parse(hex);
+        assertEquals(hex, id.toString());
+        assertEquals(id, ObjectId.fromBytes(id.toBytes()));
+        assertEquals(id, ObjectId.hash(bytes("abc")));
+        assertEquals(0xa9, id.firstByte());
+        assertTrue(id.startsWith("a9993e"));
+        assertFalse(ObjectId.isValid(hex.toUpperCase()));
+        assertTrue(ObjectId.parse("80" + hex.substring(2)).compareTo(
+                ObjectId.parse("7f" + hex.substring(2))) > 0);
+    }
+
+    @Test
+    public void testUpgrade() throws IOException {
+        File dir = repository();
+        File gitlet = new File(dir, ".gitlet");
+        gitlet.mkdir();
+        Utils.writeContents(new File(gitlet, "git"),
+                            Base64.getMimeDecoder().decode(ORIGINAL_REPO));
+        Utils.writeContents(new File(dir, "a.txt"), bytes("hello2\n"));
+        Utils.writeContents(new File(dir, "b.txt"), bytes("world\n"));
+        Utils.writeContents(new File(dir, "c.txt"), bytes("new\n"));
+        String log = gitlet(dir, "log");
+        assertTrue(log, log.startsWith(
+            "===\ncommit c81610e923d808a8fa7f90fe95070eceefdcfe26\n"));
+        assertTrue(log, log.contains(
+            "commit a8b549bfbc350f10f646a8ee0ab9ee5b9f99d8a5\n"));
+        assertTrue(log, log.contains(
+            "commit da39a3ee5e6b4b0d3255bfef95601890afd80709\n"));
+        String status = gitlet(dir, "status");
+        assertTrue(status, status.startsWith(
+            "=== Branches ===\n*master\nside\n\n"
+            + "=== Staged Files ===\nc.txt\n"));
+        assertEquals("a8b549bfbc350f10f646a8ee0ab9ee5b9f99d8a5\n",
+                     gitlet(dir, "find", "two files"));
+        assertEquals("", gitlet(dir, "commit", "three"));
+        assertEquals("", gitlet(dir, "checkout", "side"));
+        assertEquals("hello\n", Utils.readContentsAsString(
+                         new File(dir, "a.txt")));
+        assertFalse(new File(dir, "c.txt").exists());
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testGc() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        Utils.writeContents(new File(dir, "a"), bytes("a\n"));
+        gitlet(dir, "add", "a");
+        gitlet(dir, "commit", "one");
+        gitlet(dir, "branch", "b");
+        gitlet(dir, "checkout", "b");
+        Utils.writeContents(new File(dir, "b"), bytes("b\n"));
+        gitlet(dir, "add", "b");
+        gitlet(dir, "commit", "two");
+        gitlet(dir, "checkout", "master");
+        gitlet(dir, "rm-branch", "b");
+        Utils.writeContents(new File(dir, "a"), bytes("discarded\n"));
+        gitlet(dir, "add", "a");
+        Utils.writeContents(new File(dir, "a"), bytes("a\n"));
+        gitlet(dir, "add", "a");
+        assertEquals("Incorrect operands.\n", gitlet(dir, "gc", "foo"));
+        String gc = gitlet(dir, "gc");
+        assertTrue(gc, gc.startsWith("Removed 4 unreachable objects; "));
+        assertEquals("Found no commit with that message.\n",
+                     gitlet(dir, "find", "two"));
+        String one = gitlet(dir, "find", "one");
+        assertEquals(41, one.length());
+
+        gitlet(dir, "branch", "c");
+        gitlet(dir, "checkout", "c");
+        Utils.writeContents(new File(dir, "c"), bytes("c\n"));
+        gitlet(dir, "add", "c");
+        gitlet(dir, "commit", "three");
+        String three = gitlet(dir, "find", "three");
+        gitlet(dir, "pack");
+        gitlet(dir, "checkout", "master");
+        gitlet(dir, "rm-branch", "c");
+        gc = gitlet(dir, "gc");
+        assertTrue(gc, gc.startsWith("Removed 0 unreachable objects; "));
+        assertEquals(three, gitlet(dir, "find", "three"));
+        gc = gitlet(dir, "gc", "--repack");
+        assertTrue(gc, gc.startsWith("Removed 3 unreachable objects; "));
+        assertEquals("Found no commit with that message.\n",
+                     gitlet(dir, "find", "three"));
+        assertEquals(one, gitlet(dir, "find", "one"));
+        assertEquals("", gitlet(dir, "checkout", one.trim(), "--", "a"));
+        assertEquals("a\n", Utils.readContentsAsString(new File(dir, "a")));
+        assertFalse(new File(new File(dir, ".gitlet"), "indices").exists());
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testAddPaths() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        File a = new File(dir, "a");
+        Utils.writeContents(a, bytes("a\n"));
+        gitlet(dir, "add", "a");
+        gitlet(dir, "commit", "one");
+        a.delete();
+        a.mkdir();
+        Utils.writeContents(new File(a, "b"), bytes("b\n"));
+        assertEquals("", gitlet(dir, "add", "./x/../a/b"));
+        String status = gitlet(dir, "status");
+        assertTrue(status, status.contains(
+            "=== Staged Files ===\na/b\n\n=== Removed Files ===\na\n\n"));
+        gitlet(dir, "commit", "two");
+        deleteRecursively(a);
+        Utils.writeContents(a, bytes("file again\n"));
+        gitlet(dir, "add", a.getAbsolutePath());
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(
+            "=== Staged Files ===\na\n\n=== Removed Files ===\na/b\n\n"));
+        assertEquals("File is outside the repository.\n",
+                     gitlet(dir, "add", "../a"));
+        assertEquals("File is outside the repository.\n",
+                     gitlet(dir, "add", new File(dir.getParentFile(), "a")
+                            .getAbsolutePath()));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testFind() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        for (String message
+                 : new String[] { "fix parser bug", "add parser", "docs" }) {
+            Utils.writeContents(new File(dir, "f"), bytes(message));
+            gitlet(dir, "add", "f");
+            gitlet(dir, "commit", message);
+        }
+        String fix = gitlet(dir, "find", "fix parser bug");
+        String add = gitlet(dir, "find", "add parser");
+        assertEquals(41, fix.length());
+        assertEquals(41, add.length());
+        assertEquals(fix + add, gitlet(dir, "find", "--grep", "parser"));
+        assertEquals(fix + add, gitlet(dir, "find", "--grep", "ars"));
+        assertEquals(fix, gitlet(dir, "find", "--grep", "x"));
+        assertEquals("Found no commit with that message.\n",
+                     gitlet(dir, "find", "--grep", "parsers"));
+        assertEquals("Found no commit with that message.\n",
+                     gitlet(dir, "find", "parser"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testDaemon() throws IOException, InterruptedException {
+        File dir = repository();
+        gitlet(dir, "init");
+        Process daemon = new ProcessBuilder(java(
+            "-D" + Daemon.TIMEOUT_PROPERTY + "=500", "gitlet.Main",
+            "daemon")).directory(dir).redirectErrorStream(true).start();
+        File socket = new File(dir, Daemon.SOCKET.getPath());
+        SocketChannel connection = null;
+        for (int i = 0; connection == null; i += 1) {
+            try {
+                connection = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+            } catch (IOException excp) {
+                if (i == 200) {
+                    throw excp;
+                }
+                Thread.sleep(50);
+            }
+        }
+        try (SocketChannel silent = connection) {
+            Utils.writeContents(new File(dir, "a"), bytes("a\n"));
+            assertEquals("", run(dir, java("gitlet.Client", "add", "a")));
+        }
+        assertEquals("", run(dir, java("gitlet.Client", "commit", "one")));
+        assertEquals("No changes added to the commit.\n",
+                     run(dir, java("gitlet.Client", "commit", "two")));
+        String log = run(dir, java("gitlet.Client", "log"));
+        assertTrue(log, log.startsWith("===\ncommit ")
+                   && log.contains("\none\n"));
+        assertEquals(gitlet(dir, "status"),
+                     run(dir, java("gitlet.Client", "status")));
+        try (SocketChannel raw = SocketChannel.open(
+                 UnixDomainSocketAddress.of(socket.toPath()))) {
+            raw.write(ByteBuffer.wrap(new byte[] {
+                0, 0, 0, 1, 0, 0, 0, 6, 's', 't', 'a', 't', 'u', 's' }));
+            DataInputStream in =
+                new DataInputStream(Channels.newInputStream(raw));
+            StringBuilder status = new StringBuilder();
+            for (int kind = in.readByte(); kind != Daemon.END;
+                 kind = in.readByte()) {
+                assertEquals(Daemon.STDOUT, kind);
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                status.append(new String(frame, StandardCharsets.UTF_8));
+            }
+            assertEquals(gitlet(dir, "status"), status.toString()
+                         .replace(System.lineSeparator(), "\n"));
+        }
+        assertEquals("", run(dir, java("gitlet.Client", "daemon", "--stop")));
+        assertEquals(0, daemon.waitFor());
+        assertFalse(socket.exists());
+        assertEquals(log, gitlet(dir, "log"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        File a = new File(dir, "a");
+        Utils.writeContents(a, bytes("a\n"));
+        gitlet(dir, "add", "a");
+        gitlet(dir, "commit", "one");
+        long time = 1600000000000L;
+        String clean = "=== Modifications Not Staged For Commit ===\n\n";
+        String modified =
+            "=== Modifications Not Staged For Commit ===\na (modified)\n";
+        assertTrue(a.setLastModified(time));
+        String status = gitlet(dir, "status");
+        assertTrue(status, status.contains(clean));
+        /* Same size and time: the recorded hash is trusted unread. */
+        Utils.writeContents(a, bytes("b\n"));
+        assertTrue(a.setLastModified(time));
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(clean));
+        assertTrue(a.setLastModified(time + 1000));
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(modified));
+        Utils.writeContents(a, bytes("a\n"));
+        assertTrue(a.setLastModified(time + 1000));
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(modified));
+        assertTrue(a.setLastModified(time + 2000));
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(clean));
+        Utils.writeContents(a, bytes("long enough\n"));
+        assertTrue(a.setLastModified(time + 2000));
+        status = gitlet(dir, "status");
+        assertTrue(status, status.contains(modified));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testCheckout() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        File same = new File(dir, "same"), changed = new File(dir, "changed"),
+            gone = new File(dir, "d/gone"), added = new File(dir, "e/added");
+        gone.getParentFile().mkdir();
+        Utils.writeContents(same, bytes("same\n"));
+        Utils.writeContents(changed, bytes("master\n"));
+        Utils.writeContents(gone, bytes("gone\n"));
+        gitlet(dir, "add", "same");
+        gitlet(dir, "add", "changed");
+        gitlet(dir, "add", "d/gone");
+        gitlet(dir, "commit", "master");
+        gitlet(dir, "branch", "other");
+        gitlet(dir, "checkout", "other");
+        Utils.writeContents(changed, bytes("other\n"));
+        gitlet(dir, "rm", "d/gone");
+        added.getParentFile().mkdir();
+        Utils.writeContents(added, bytes("added\n"));
+        gitlet(dir, "add", "changed");
+        gitlet(dir, "add", "e/added");
+        gitlet(dir, "commit", "other");
+        gitlet(dir, "checkout", "master");
+
+        long time = 1600000000000L;
+        assertTrue(same.setLastModified(time));
+        assertEquals("", gitlet(dir, "checkout", "other"));
+        assertEquals(time, same.lastModified());
+        assertEquals("other\n", Utils.readContentsAsString(changed));
+        assertEquals("added\n", Utils.readContentsAsString(added));
+        assertFalse(gone.exists());
+        assertFalse(gone.getParentFile().exists());
+
+        Utils.writeContents(new File(dir, "d"), bytes("d\n"));
+        assertEquals("There is an untracked file in the way; "
+                     + "delete it or add it first.\n",
+                     gitlet(dir, "checkout", "master"));
+        assertEquals(time, same.lastModified());
+        new File(dir, "d").delete();
+        assertEquals("", gitlet(dir, "checkout", "master"));
+        assertEquals(time, same.lastModified());
+        assertEquals("master\n", Utils.readContentsAsString(changed));
+        assertEquals("gone\n", Utils.readContentsAsString(gone));
+        assertFalse(added.getParentFile().exists());
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testLog() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        new File(dir, "d").mkdir();
+        String[][] commits = {
+            { "one", "a" }, { "two", "d/b" }, { "three", "a" }, { "four", "c" }
+        };
+        for (String[] commit : commits) {
+            Utils.writeContents(new File(dir, commit[1]), bytes(commit[0]));
+            gitlet(dir, "add", commit[1]);
+            gitlet(dir, "commit", commit[0]);
+        }
+        assertEquals(Arrays.asList("four", "three", "two", "one",
+                                   "initial commit"),
+                     messages(gitlet(dir, "log")));
+        assertEquals(Arrays.asList("four", "three"),
+                     messages(gitlet(dir, "log", "-n", "2")));
+        assertEquals(Arrays.asList("three", "one"),
+                     messages(gitlet(dir, "log", "--", "a")));
+        assertEquals(Arrays.asList("two"),
+                     messages(gitlet(dir, "log", "--", "d")));
+        assertEquals(Arrays.asList("three"),
+                     messages(gitlet(dir, "log", "-n", "1", "--", "a")));
+        assertEquals(Arrays.asList("initial commit"),
+                     messages(gitlet(dir, "log", "--until", "2000-01-01")));
+        assertEquals(Collections.emptyList(),
+                     messages(gitlet(dir, "log", "--since", "2100-01-01")));
+        assertEquals(Arrays.asList("four"),
+                     messages(gitlet(dir, "global-log", "-n", "1")));
+        assertEquals(5, messages(gitlet(dir, "global-log")).size());
+        assertEquals("Incorrect operands.\n", gitlet(dir, "log", "-n"));
+        assertEquals("Incorrect operands.\n",
+                     gitlet(dir, "log", "-n", "-1"));
+        assertEquals("Incorrect operands.\n",
+                     gitlet(dir, "global-log", "--since", "never"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testDiffCommand() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        Utils.writeContents(new File(dir, "a"), bytes("one\ntwo\nthree\n"));
+        Utils.writeContents(new File(dir, "b"), bytes("b\n"));
+        Utils.writeContents(new File(dir, "same"), bytes("same\n"));
+        gitlet(dir, "add", "a");
+        gitlet(dir, "add", "b");
+        gitlet(dir, "add", "same");
+        gitlet(dir, "commit", "first");
+        Utils.writeContents(new File(dir, "a"), bytes("one\n2\nthree\n"));
+        Utils.writeContents(new File(dir, "c"), bytes("c\n"));
+        gitlet(dir, "add", "a");
+        gitlet(dir, "rm", "b");
+        gitlet(dir, "add", "c");
+        gitlet(dir, "commit", "second");
+        String first = gitlet(dir, "find", "first").trim();
+        String second = gitlet(dir, "find", "second").trim();
+        assertEquals("diff --git a/a b/a\n--- a/a\n+++ b/a\n"
+                     + "@@ -1,3 +1,3 @@\n one\n-two\n+2\n three\n"
+                     + "diff --git a/b b/b\n--- a/b\n+++ /dev/null\n"
+                     + "@@ -1 +0,0 @@\n-b\n"
+                     + "diff --git a/c b/c\n--- /dev/null\n+++ b/c\n"
+                     + "@@ -0,0 +1 @@\n+c\n",
+                     gitlet(dir, "diff", first, second));
+        assertEquals("", gitlet(dir, "diff"));
+        Utils.writeContents(new File(dir, "c"), bytes("c\nx\n"));
+        assertEquals("diff --git a/c b/c\n--- a/c\n+++ b/c\n"
+                     + "@@ -1 +1,2 @@\n c\n+x\n",
+                     gitlet(dir, "diff"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "diff", "0000000"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testStatus() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        Utils.writeContents(new File(dir, "a.txt"), bytes("a\n"));
+        Utils.writeContents(new File(dir, "b.txt"), bytes("b\n"));
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "add", "b.txt");
+        gitlet(dir, "commit", "one");
+        File a = new File(dir, "a.txt");
+        a.delete();
+        a.mkdir();
+        Utils.writeContents(new File(a, "c"), bytes("c\n"));
+        Utils.writeContents(new File(dir, "b.txt"), bytes("B\n"));
+        File d = new File(dir, "d");
+        d.mkdir();
+        Files.createSymbolicLink(new File(d, "loop").toPath(),
+                                 dir.toPath());
+        assertEquals("=== Branches ===\n*master\n\n"
+                     + "=== Staged Files ===\n\n"
+                     + "=== Removed Files ===\n\n"
+                     + "=== Modifications Not Staged For Commit ===\n"
+                     + "a.txt (deleted)\nb.txt (modified)\n\n"
+                     + "=== Untracked Files ===\na.txt/c\n\n",
+                     gitlet(dir, "status"));
+        new File(d, "loop").delete();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        for (int i = 0; i < 20; i += 1) {
+            Utils.writeContents(new File(dir, i + ".txt"), bytes(i + "\n"));
+            gitlet(dir, "add", i + ".txt");
+        }
+        gitlet(dir, "commit", "one");
+        gitlet(dir, "branch", "other");
+        for (int i = 0; i < 20; i += 2) {
+            Utils.writeContents(new File(dir, i + ".txt"), bytes("master\n"));
+            gitlet(dir, "add", i + ".txt");
+        }
+        gitlet(dir, "rm", "1.txt");
+        gitlet(dir, "commit", "master");
+        gitlet(dir, "checkout", "other");
+        for (int i = 1; i < 20; i += 2) {
+            Utils.writeContents(new File(dir, i + ".txt"), bytes("other\n"));
+            gitlet(dir, "add", i + ".txt");
+        }
+        Utils.writeContents(new File(dir, "0.txt"), bytes("zero\n"));
+        gitlet(dir, "add", "0.txt");
+        gitlet(dir, "commit", "other");
+        gitlet(dir, "checkout", "master");
+        assertEquals("Encountered a merge conflict.\n",
+                     gitlet(dir, "merge", "other"));
+        assertEquals("<<<<<<< HEAD\nmaster\n=======\nzero\n>>>>>>>\n",
+                     Utils.readContentsAsString(new File(dir, "0.txt")));
+        assertEquals("<<<<<<< HEAD\n=======\nother\n>>>>>>>\n",
+                     Utils.readContentsAsString(new File(dir, "1.txt")));
+        for (int i = 2; i < 20; i += 1) {
+            assertEquals(i % 2 == 0 ? "master\n" : "other\n",
+                         Utils.readContentsAsString(
+                             new File(dir, i + ".txt")));
+        }
+        String status = gitlet(dir, "status");
+        assertTrue(status, status.endsWith(
+            "=== Modifications Not Staged For Commit ===\n\n"
+            + "=== Untracked Files ===\n\n"));
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void testBlame() throws IOException {
+        File dir = repository();
+        gitlet(dir, "init");
+        Utils.writeContents(new File(dir, "a.txt"), bytes("old\n"));
+        Utils.writeContents(new File(dir, "b.txt"), bytes("1\n"));
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "add", "b.txt");
+        gitlet(dir, "commit", "one");
+        Utils.writeContents(new File(dir, "b.txt"), bytes("2\n"));
+        gitlet(dir, "add", "b.txt");
+        gitlet(dir, "commit", "two");
+        Utils.writeContents(new File(dir, "a.txt"), bytes("new\n"));
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "three");
+        String one = gitlet(dir, "find", "one").trim();
+        String three = gitlet(dir, "find", "three").trim();
+        File objects = new File(new File(dir, ".gitlet"), "objects");
+        new File(new File(objects, one.substring(0, 2)),
+                 one.substring(2)).delete();
+        String[] lines = gitlet(dir, "blame", "a.txt").split("\n");
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].startsWith(three.substring(0, 8))
+                   && lines[0].endsWith(" 1) new"));
+
+        Utils.writeContents(new File(dir, "a.txt"), bytes("new\nmore\n"));
+        gitlet(dir, "add", "a.txt");
+        gitlet(dir, "commit", "four");
+        String four = gitlet(dir, "find", "four").trim();
+        lines = gitlet(dir, "blame", "a.txt").split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].startsWith(three.substring(0, 8))
+                   && lines[0].endsWith(" 1) new"));
+        assertTrue(lines[1], lines[1].startsWith(four.substring(0, 8))
+                   && lines[1].endsWith(" 2) more"));
+        deleteRecursively(dir);
+    }
+
+    /** A repository in the original format, as written by the first
+     *  version of Gitlet, in base 64: .gitlet/git after committing
+     *  "hello" in a.txt and "world" in b.txt, branching "side",
+     *  committing "hello2" in a.txt and staging "new" in c.txt. */
+    private static final String ORIGINAL_REPO =
+        "rO0ABXNyAA9naXRsZXQuTWFpbiRHaXT64vH44+p/lQIABkwACV9icmFuY2hlc3QA" +
+        "D0xqYXZhL3V0aWwvTWFwO0wACF9jb21taXRzcQB+AAFMAA5fY3VycmVudEJyYW5j" +
+        "aHQAEkxqYXZhL2xhbmcvU3RyaW5nO0wABl9maWxlc3EAfgABTAAIX2hlYWRQdHJx" +
+        "AH4AAkwAB19zdGFnZWRxAH4AAXhwc3IAEWphdmEudXRpbC5UcmVlTWFwDMH2Pi0l" +
+        "auYDAAFMAApjb21wYXJhdG9ydAAWTGphdmEvdXRpbC9Db21wYXJhdG9yO3hwcHcE" +
+        "AAAAAnQABm1hc3RlcnQAKGM4MTYxMGU5MjNkODA4YThmYTdmOTBmZTk1MDcwZWNl" +
+        "ZWZkY2ZlMjZ0AARzaWRldAAoYThiNTQ5YmZiYzM1MGYxMGY2NDZhOGVlMGFiOWVl" +
+        "NWI5Zjk5ZDhhNXhzcgARamF2YS51dGlsLkhhc2hNYXAFB9rBwxZg0QMAAkYACmxv" +
+        "YWRGYWN0b3JJAAl0aHJlc2hvbGR4cD9AAAAAAAAMdwgAAAAQAAAAA3QAKGRhMzlh" +
+        "M2VlNWU2YjRiMGQzMjU1YmZlZjk1NjAxODkwYWZkODA3MDlzcgAWZ2l0bGV0Lk1h" +
+        "aW4kR2l0JENvbW1pdAmq64fd+F9fAgAFTAAKX2NvbW1pdHRlZHEAfgABTAAFX2Rh" +
+        "dGV0ABBMamF2YS91dGlsL0RhdGU7TAAFX2hhc2hxAH4AAkwACF9tZXNzYWdlcQB+" +
+        "AAJMAAhfcGFyZW50c3QAEExqYXZhL3V0aWwvTGlzdDt4cHNxAH4ACz9AAAAAAAAA" +
+        "dwgAAAAQAAAAAHhzcgAOamF2YS51dGlsLkRhdGVoaoEBS1l0GQMAAHhwdwgAAAAA" +
+        "AAAAAHhxAH4ADXQADmluaXRpYWwgY29tbWl0c3IAE2phdmEudXRpbC5BcnJheUxp" +
+        "c3R4gdIdmcdhnQMAAUkABHNpemV4cAAAAAB3BAAAAAB4cQB+AApzcQB+AA5zcQB+" +
+        "AAs/QAAAAAAADHcIAAAAEAAAAAJzcgAMamF2YS5pby5GaWxlBC2kRQ4N5P8DAAFM" +
+        "AARwYXRocQB+AAJ4cHQABWIudHh0dwIAL3h0ACg5NTkxODE4YzA3ZTkwMGRiN2Ux" +
+        "ZTBiYzRiODg0Yzk0NWU2YTYxYjI0c3EAfgAadAAFYS50eHR3AgAveHQAKGY1NzJk" +
+        "Mzk2ZmFlOTIwNjYyODcxNGZiMmNlMDBmNzJlOTRmMjI1OGZ4c3EAfgATdwgAAAGh" +
+        "R1b1VXhxAH4ACnQACXR3byBmaWxlc3NyACNqYXZhLnV0aWwuQ29sbGVjdGlvbnMk" +
+        "U2luZ2xldG9uTGlzdCrvKRA8p5uXAgABTAAHZWxlbWVudHQAEkxqYXZhL2xhbmcv" +
+        "T2JqZWN0O3hwcQB+AA1xAH4ACHNxAH4ADnNxAH4ACz9AAAAAAAAMdwgAAAAQAAAA" +
+        "AnEAfgAbcQB+AB1xAH4AHnQAKDBkMmFhZTdkMTU2ZDc5NmI5N2FlMTFiNGRiYTUw" +
+        "NmE1NWY1NGE3NWV4c3EAfgATdwgAAAGhR1b31XhxAH4ACHQACGNoYW5nZSBhc3EA" +
+        "fgAjcQB+AAp4cQB+AAdzcQB+AAs/QAAAAAAADHcIAAAAEAAAAARxAH4AKHVyAAJb" +
+        "QqzzF/gGCFTgAgAAeHAAAAAHaGVsbG8yCnEAfgAgdXEAfgAtAAAABmhlbGxvCnQA" +
+        "KDM4OWNjNmI3YWU1YTY1OTM4M2VhYjVkZmMyNTM3NjRlY2NmODQ3MzJ1cQB+AC0A" +
+        "AAAEbmV3CnEAfgAddXEAfgAtAAAABndvcmxkCnhxAH4ACHNxAH4ACz9AAAAAAAAM" +
+        "dwgAAAAQAAAAA3EAfgAbcQB+AB1xAH4AHnEAfgAoc3EAfgAadAAFYy50eHR3AgAv" +
+        "eHEAfgAweA==";
+
+    /** Returns the messages of the commits shown in LOG, the output of
+     *  log or global-log, in order. */
+    private static List<String> messages(String log) {
+        List<String> result = new ArrayList<>();
+        String[] lines = log.split("\n");
+        for (int i = 0; i + 1 < lines.length; i += 1) {
+            if (lines[i].startsWith("Date: ")) {
+                result.add(lines[i + 1]);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the UTF-8 encoding of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the id of the UTF-8 encoding of S. */
+    private static ObjectId id(String s) {
+        return ObjectId.hash(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns a new, empty directory for a repository. */
+    private static File repository() throws IOException {
+        File dir = File.createTempFile("repo", null);
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    /** Runs Gitlet with arguments ARGS in a new process whose working
+     *  directory is DIR, and returns what it printed. */
+    private static String gitlet(File dir, String... args)
+        throws IOException {
+        List<String> command = java("gitlet.Main");
+        command.addAll(Arrays.asList(args));
+        return run(dir, command);
+    }
+
+    /** Returns the command running Java with the class path of this
+     *  test on ARGS: options, then a class and its arguments. */
+    private static List<String> java(String... args) {
+        List<String> classPath = new ArrayList<>();
+        for (String entry
+                 : System.getProperty("java.class.path")
+                   .split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        List<String> command = new ArrayList<>(Arrays.asList(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp", String.join(File.pathSeparator, classPath)));
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    /** Runs COMMAND in a new process whose working directory is DIR, and
+     *  returns what it printed. */
+    private static String run(File dir, List<String> command)
+        throws IOException {
+        Process process = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        byte[] output = process.getInputStream().readAllBytes();
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return new String(output, StandardCharsets.UTF_8)
+            .replace(System.lineSeparator(), "\n");
+    }
+
+    /** Deletes FILE and, if it is a directory, everything under it. */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
 }
 
 
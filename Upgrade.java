@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/** The repository format of the first version of Gitlet, which kept
+ *  everything, commits and file contents included, in a single
+ *  Java-serialized Git object in .gitlet/git.  Its classes were
+ *  Main.Git and Main.Git.Commit, which have since changed beyond what
+ *  serialization can reconcile, so their streams are read into the
+ *  look-alike classes Git and Commit here instead.  Main converts what
+ *  is read into the current format.
+ *  @author Jianing Yu
+ */
+class Upgrade {
+
+    /** Returns the repository in BYTES, the contents of a .gitlet/git
+     *  file in the original format. */
+    static Git read(byte[] bytes) {
+        try (ObjectInputStream in = new Input(bytes)) {
+            return (Git) in.readObject();
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw Utils.error("Unrecognized file format.");
+        }
+    }
+
+    /** A stream of a repository in the original format, which reads the
+     *  original Main.Git and Main.Git.Commit as Git and Commit. */
+    private static class Input extends ObjectInputStream {
+        /** A stream reading BYTES. */
+        Input(byte[] bytes) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            switch (desc.getName()) {
+            case "gitlet.Main$Git":
+                return local(desc, Git.class);
+            case "gitlet.Main$Git$Commit":
+                return local(desc, Commit.class);
+            default:
+                return desc;
+            }
+        }
+
+        /** Returns the descriptor of CLS, which stands in for the class
+         *  described by DESC if their serial version UIDs agree. */
+        private static ObjectStreamClass local(ObjectStreamClass desc,
+                                               Class<?> cls)
+            throws IOException {
+            ObjectStreamClass result = ObjectStreamClass.lookup(cls);
+            if (result.getSerialVersionUID()
+                != desc.getSerialVersionUID()) {
+                throw new IOException("unknown version of " + desc.getName());
+            }
+            return result;
+        }
+    }
+
+    /** A repository in the original format.  Ids are SHA-1 hashes in
+     *  hexadecimal. */
+    static class Git implements Serializable {
+        private static final long serialVersionUID = -368466168212979819L;
+
+        /** The head commit. */
+        String _headPtr;
+        /** The current branch. */
+        String _currentBranch;
+        /** All commits, by id. */
+        Map<String, Commit> _commits;
+        /** The head commit of each branch. */
+        Map<String, String> _branches;
+        /** The blob of each staged file. */
+        Map<File, String> _staged;
+        /** The contents of every blob, by id. */
+        Map<String, byte[]> _files;
+    }
+
+    /** A commit in the original format. */
+    static class Commit implements Serializable {
+        private static final long serialVersionUID = 696628061159317343L;
+
+        /** The id of this commit. */
+        String _hash;
+        /** The message. */
+        String _message;
+        /** The date. */
+        Date _date;
+        /** The ids of the parents. */
+        List<String> _parents;
+        /** The blob of each committed file. */
+        Map<File, String> _committed;
+    }
+}
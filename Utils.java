@@ -1,23 +1,31 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 
 /** Assorted utilities.
@@ -30,39 +38,68 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** SHA-1 digests, one per thread, reused across calls. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGESTS =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
+    /** Returns this thread's SHA-1 digest, reset and ready for use.  The
+     *  digest is shared by all callers on this thread, so it must be
+     *  finished before another hash is started. */
+    static MessageDigest sha1Digest() {
+        MessageDigest md = SHA1_DIGESTS.get();
+        md.reset();
+        return md;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(byte[]... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (byte[] val : vals) {
-                md.update(val);
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+        MessageDigest md = sha1Digest();
+        for (byte[] val : vals) {
+            md.update(val);
         }
+        return hex(md.digest());
     }
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(String... vals) {
+        MessageDigest md = sha1Digest();
+        for (String val : vals) {
+            md.update(val.getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of the remaining bytes
+     *  of VALS, consuming them. */
+    static String sha1(ByteBuffer... vals) {
+        MessageDigest md = sha1Digest();
+        for (ByteBuffer val : vals) {
+            md.update(val);
+        }
+        return hex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the bytes remaining in IN, which is read
+     *  to its end CHUNK_SIZE bytes at a time but not closed.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(InputStream in) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (String val : vals) {
-                md.update(val.getBytes(StandardCharsets.UTF_8));
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            MessageDigest md = sha1Digest();
+            byte[] buffer = new byte[CHUNK_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            return hex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
@@ -72,14 +109,75 @@ class Utils {
         return sha1(vals.toArray(new String[0]));
     }
 
+    /** The size of the buffer used to stream file contents. */
+    static final int CHUNK_SIZE = 1 << 16;
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  The contents are read CHUNK_SIZE bytes at a time, so
+     *  FILE may be arbitrarily large.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static String sha1(File file) {
+        return hex(digestOf(file));
+    }
+
+    /** Returns the raw SHA-1 hash of the contents of FILE, which must be
+     *  a normal file, read as by sha1(FILE). */
+    static byte[] digestOf(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MessageDigest md = sha1Digest();
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+            return md.digest();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the bytes whose lower-case hexadecimal representation, as
+     *  produced by hex, is HEX. */
+    static byte[] unhex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2),
+                                                16);
+        }
+        return result;
+    }
+
+    /** The hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns DIGEST as a string of lower-case hexadecimal digits. */
+    static String hex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
      *  if FILE was deleted, and false otherwise.  Refuses to delete FILE
      *  and throws IllegalArgumentException unless the directory designated by
-     *  FILE also contains a directory named .gitlet. */
+     *  FILE, or one of its ancestors, also contains a directory named
+     *  .gitlet. */
     static boolean restrictedDelete(File file) {
-        if (!(new File(file.getParentFile(), ".gitlet")).isDirectory()) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        while (dir != null && !(new File(dir, ".gitlet")).isDirectory()) {
+            dir = dir.getParentFile();
+        }
+        if (dir == null) {
             throw new IllegalArgumentException("not .gitlet working directory");
         }
         if (!file.isDirectory()) {
@@ -139,6 +237,92 @@ class Utils {
         }
     }
 
+    /** Replace the contents of FILE with CONTENTS so that, even if the
+     *  program or the machine stops part way through, FILE afterwards
+     *  holds either its old contents or CONTENTS in full.  CONTENTS is
+     *  written to a temporary file beside FILE and forced to disk, which
+     *  is then renamed over FILE.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static void writeAtomically(File file, byte[] contents) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        Path temp = null;
+        try {
+            temp = dir.toPath().resolve(".tmp-" + UUID.randomUUID());
+            try (FileChannel out = FileChannel.open(
+                     temp, StandardOpenOption.CREATE_NEW,
+                     StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            moveAtomically(temp.toFile(), file);
+            temp = null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Rename FROM to TO, replacing TO if it is a file, so that even if
+     *  the machine stops part way through, TO afterwards is either what it
+     *  was or what FROM was.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void moveAtomically(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        syncDirectory(to.getAbsoluteFile().getParentFile());
+    }
+
+    /** Append RECORDS, a sequence of records of RECORDSIZE bytes each, to
+     *  FILE, creating it if needed.  A partial record left at the end of
+     *  FILE by an interrupted append is first cut off, so that records
+     *  always start at multiples of RECORDSIZE.  If SYNC, the records are
+     *  forced to disk before returning.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static void appendRecords(File file, int recordSize, byte[] records,
+                              boolean sync) {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE)) {
+            long size = out.size() - out.size() % recordSize;
+            out.truncate(size);
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                size += out.write(buffer, size);
+            }
+            if (sync) {
+                out.force(false);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Force the entries of directory DIR to disk, so that files renamed
+     *  into it stay renamed.  Not all systems support this, and failures
+     *  are ignored. */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                                                    StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -155,9 +339,26 @@ class Utils {
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write OBJ to FILE, atomically replacing any previous contents. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        writeAtomically(file, serialize(obj));
     }
 
     /* DIRECTORIES */
@@ -191,8 +392,30 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns a list of the names of all subdirectories of the directory
+     *  DIR, in lexicographic order as Java Strings.  Returns an empty list
+     *  if DIR does not denote a directory. */
+    static List<String> directoriesIn(File dir) {
+        String[] files = dir.list((parent, name) ->
+            new File(parent, name).isDirectory());
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
     /* OTHER FILE UTILITIES */
 
+    /** Creates any missing directories above FILE.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void makeParentDirectories(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IllegalArgumentException("cannot create directory");
+        }
+    }
+
     /** Return the concatenation of FIRST and OTHERS into a File designator,
      *  analogous to the {@link java.nio.file.Paths#get(String, String[])}
      *  method. */
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Scans of the working directory that stat and hash files in parallel
+ *  on the common fork-join pool.  Results are always sorted, so output
+ *  derived from them does not depend on scheduling.
+ *  @author Jianing Yu
+ */
+class WorkTree {
+
+    /** Returns the paths of all plain files in the working directory and
+     *  its subdirectories, other than .gitlet, relative to the working
+     *  directory and in lexicographic order.  Subdirectories are listed
+     *  in parallel.  Symbolic links to directories are not followed, as
+     *  they may lead back up the tree. */
+    static List<File> plainFiles() {
+        List<File> result = ForkJoinPool.commonPool().invoke(
+            new Lister(new File("."), null));
+        result.sort(null);
+        return result;
+    }
+
+    /** A task listing the plain files under one directory. */
+    private static class Lister extends RecursiveTask<List<File>> {
+        private static final long serialVersionUID = 1L;
+
+        /** A task listing the files under DIR, naming them relative to
+         *  PREFIX, or to the working directory if PREFIX is null. */
+        Lister(File dir, File prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+
+        @Override
+        protected List<File> compute() {
+            List<File> result = new ArrayList<>();
+            String[] names = _dir.list();
+            if (names == null) {
+                return result;
+            }
+            List<Lister> subtasks = new ArrayList<>();
+            for (String name : names) {
+                File file = new File(_dir, name);
+                File path = _prefix == null ? new File(name)
+                    : new File(_prefix, name);
+                if (file.isFile()) {
+                    result.add(path);
+                } else if (file.isDirectory()
+                           && !Files.isSymbolicLink(file.toPath())
+                           && !(_prefix == null && name.equals(".gitlet"))) {
+                    Lister subtask = new Lister(file, path);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                }
+            }
+            for (Lister subtask : subtasks) {
+                result.addAll(subtask.join());
+            }
+            return result;
+        }
+
+        /** The directory to list. */
+        private final File _dir;
+        /** The relative path of _dir, or null for the working directory. */
+        private final File _prefix;
+    }
+
+    /** Returns the SHA-1 hashes of those FILES that are normal files,
+     *  sorted by file.  Files are hashed in parallel, and only read if
+     *  INDEX has no up-to-date hash for them. */
+    static SortedMap<File, ObjectId> hashes(Index index,
+                                            Collection<File> files) {
+        ConcurrentMap<File, ObjectId> result = new ConcurrentHashMap<>();
+        files.parallelStream()
+            .filter(File::isFile)
+            .forEach(file -> result.put(file, index.hash(file)));
+        return new TreeMap<>(result);
+    }
+}